@@ -36,12 +36,13 @@ import com.rico.felix.view.View;
 final class Application
 {
     /**
-     * This method launches the application, loads application data
-     * and presents a view of the data to the user.
+     * This method launches the application, presents a view of the data to
+     * the user and loads application data, which becomes available as it
+     * is read.
      */
     public static void main(String[] args)
     {
-        Directory.loadDirectory();
         View.loadView();
+        Directory.loadDirectory(View::showLoadProgress).join();
     }
 }
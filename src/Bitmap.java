@@ -0,0 +1,672 @@
+/*
+ * Copyright 2014-2015 Rico Antonio Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * @author Rico Antonio Felix <ricoantoniofelix@yahoo.com>
+ */
+
+package com.rico.felix.data;
+
+/*
+ * Platform Dependencies
+ */
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * This class is used as a compressed set of record ids, as handed out by the
+ * directory's bitmap indexes.
+ *
+ * The ids are split by their upper 16 bits into chunks of 65536, and each
+ * chunk holding any id is kept in a container of its own: a sorted array of
+ * the lower 16 bits while the chunk holds at most 4096 ids, and a plain
+ * bitmap of 8 KB beyond that. Sparse sets thus cost two bytes per id and
+ * dense sets one bit, and combining two sets works container by container,
+ * intersecting or merging sorted arrays and and-ing or or-ing whole words.
+ *
+ * A bitmap handed out is never changed afterwards, combining bitmaps always
+ * yields a new one.
+ */
+public final class Bitmap
+{
+    // Ids a container holds as a sorted array before turning into bits
+    private static final int ARRAY_LIMIT = 0x1000;
+
+    // Words of a container holding its ids as bits
+    private static final int WORDS = 0x400;
+
+    // Upper 16 bits of the ids of each container, ascending
+    private char[] keys;
+    private Container[] containers;
+
+    // Number of containers in use
+    private int size;
+
+    /*
+     * Default constructor for an empty bitmap
+     */
+    Bitmap()
+    {
+        this(new char[4], new Container[4], 0);
+    }
+
+    private Bitmap(final char[] keys, final Container[] containers, final int size)
+    {
+        this.keys       = keys;
+        this.containers = containers;
+        this.size       = size;
+    }
+
+    /**
+     * Count the ids within this bitmap
+     *
+     * @return int - Number of ids
+     */
+    public int cardinality()
+    {
+        int cardinality = 0;
+
+        for (int i = 0; i < size; ++i)
+            cardinality += containers[i].cardinality();
+
+        return cardinality;
+    }
+
+    /**
+     * Determine whether this bitmap holds no id
+     *
+     * @return boolean - true if there are no ids, false otherwise
+     */
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * Determine whether this bitmap holds an id
+     *
+     * @param id - The id
+     *
+     * @return boolean - true if the id is held, false otherwise
+     */
+    public boolean contains(final int id)
+    {
+        final int position = find((char) (id >>> 16));
+
+        return position >= 0 && containers[position].contains((char) id);
+    }
+
+    /**
+     * Intersect this bitmap with another
+     *
+     * @param other - The other bitmap
+     *
+     * @return Bitmap - The ids held by both bitmaps
+     */
+    public Bitmap and(final Bitmap other)
+    {
+        final Bitmap result = new Bitmap(new char[Math.min(size, other.size)],
+                                         new Container[Math.min(size, other.size)], 0);
+
+        for (int i = 0, j = 0; i < size && j < other.size;)
+        {
+            if (keys[i] < other.keys[j])
+                ++i;
+            else if (keys[i] > other.keys[j])
+                ++j;
+            else
+            {
+                result.append(keys[i], and(containers[i], other.containers[j]));
+                ++i;
+                ++j;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Unite this bitmap with another
+     *
+     * @param other - The other bitmap
+     *
+     * @return Bitmap - The ids held by either bitmap
+     */
+    public Bitmap or(final Bitmap other)
+    {
+        final Bitmap result = new Bitmap(new char[size + other.size],
+                                         new Container[size + other.size], 0);
+        int i = 0;
+        int j = 0;
+
+        while (i < size && j < other.size)
+        {
+            if (keys[i] < other.keys[j])
+            {
+                result.append(keys[i], containers[i]);
+                ++i;
+            }
+            else if (keys[i] > other.keys[j])
+            {
+                result.append(other.keys[j], other.containers[j]);
+                ++j;
+            }
+            else
+            {
+                result.append(keys[i], or(containers[i], other.containers[j]));
+                ++i;
+                ++j;
+            }
+        }
+
+        for (; i < size; ++i)
+            result.append(keys[i], containers[i]);
+
+        for (; j < other.size; ++j)
+            result.append(other.keys[j], other.containers[j]);
+
+        return result;
+    }
+
+    /**
+     * Subtract another bitmap from this one, which negates the other bitmap
+     * relative to this one
+     *
+     * @param other - The bitmap to subtract
+     *
+     * @return Bitmap - The ids held by this bitmap but not the other
+     */
+    public Bitmap andNot(final Bitmap other)
+    {
+        final Bitmap result = new Bitmap(new char[size], new Container[size], 0);
+
+        for (int i = 0, j = 0; i < size; ++i)
+        {
+            while (j < other.size && other.keys[j] < keys[i])
+                ++j;
+
+            if (j < other.size && other.keys[j] == keys[i])
+                result.append(keys[i], andNot(containers[i], other.containers[j]));
+            else
+                result.append(keys[i], containers[i]);
+        }
+
+        return result;
+    }
+
+    /**
+     * Perform an action for every id in ascending order
+     *
+     * @param action - Action receiving the ids
+     *
+     * @return void
+     */
+    public void forEach(final IntConsumer action)
+    {
+        for (int i = 0; i < size; ++i)
+            containers[i].forEach(keys[i] << 16, action);
+    }
+
+    /**
+     * Retrieve the ids of this bitmap
+     *
+     * @return int[] - The ids in ascending order
+     */
+    public int[] toArray()
+    {
+        final int[] ids = new int[cardinality()];
+        final int[] count = new int[1];
+
+        forEach(id -> ids[count[0]++] = id);
+
+        return ids;
+    }
+
+    /**
+     * Add an id to this bitmap, which must not have been handed out yet
+     *
+     * @param id - The id
+     *
+     * @return void
+     */
+    void add(final int id)
+    {
+        final char key = (char) (id >>> 16);
+        int position = find(key);
+
+        if (position < 0)
+        {
+            position = -(position + 1);
+
+            if (size == keys.length)
+            {
+                keys       = Arrays.copyOf(keys, size + (size >> 1) + 1);
+                containers = Arrays.copyOf(containers, keys.length);
+            }
+
+            System.arraycopy(keys, position, keys, position + 1, size - position);
+            System.arraycopy(containers, position, containers, position + 1, size - position);
+
+            keys[position]       = key;
+            containers[position] = new ArrayContainer();
+            ++size;
+        }
+
+        containers[position] = containers[position].add((char) id);
+    }
+
+    /**
+     * Remove an id from this bitmap, which must not have been handed out yet
+     *
+     * @param id - The id
+     *
+     * @return void
+     */
+    void remove(final int id)
+    {
+        final int position = find((char) (id >>> 16));
+
+        if (position < 0)
+            return;
+
+        final Container container = containers[position].remove((char) id);
+
+        if (container != null)
+        {
+            containers[position] = container;
+            return;
+        }
+
+        System.arraycopy(keys, position + 1, keys, position, size - position - 1);
+        System.arraycopy(containers, position + 1, containers, position, size - position - 1);
+
+        containers[--size] = null;
+    }
+
+    /**
+     * Copy this bitmap so the copy can be handed out while this one changes
+     *
+     * @return Bitmap - A bitmap holding the same ids
+     */
+    Bitmap copy()
+    {
+        final Container[] copies = new Container[size];
+
+        for (int i = 0; i < size; ++i)
+            copies[i] = containers[i].copy();
+
+        return new Bitmap(Arrays.copyOf(keys, size), copies, size);
+    }
+
+    /**
+     * Locate the container of a key by binary search
+     */
+    private int find(final char key)
+    {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    /**
+     * Append a container for a key above every key held, unless the
+     * container is empty
+     */
+    private void append(final char key, final Container container)
+    {
+        if (container == null)
+            return;
+
+        keys[size]       = key;
+        containers[size] = container;
+        ++size;
+    }
+
+    /**
+     * Intersect two containers of the same key
+     */
+    private static Container and(final Container left, final Container right)
+    {
+        if (left instanceof ArrayContainer)
+            return ((ArrayContainer) left).retain(right, true);
+
+        if (right instanceof ArrayContainer)
+            return ((ArrayContainer) right).retain(left, true);
+
+        final long[] words = ((BitsContainer) left).words.clone();
+        final long[] others = ((BitsContainer) right).words;
+
+        for (int i = 0; i < WORDS; ++i)
+            words[i] &= others[i];
+
+        return fromWords(words);
+    }
+
+    /**
+     * Unite two containers of the same key
+     */
+    private static Container or(final Container left, final Container right)
+    {
+        if (left instanceof ArrayContainer && right instanceof ArrayContainer
+                && left.cardinality() + right.cardinality() <= ARRAY_LIMIT)
+            return ((ArrayContainer) left).merge((ArrayContainer) right);
+
+        final long[] words = new long[WORDS];
+
+        left.setIn(words);
+        right.setIn(words);
+
+        return fromWords(words);
+    }
+
+    /**
+     * Subtract a container from another of the same key
+     */
+    private static Container andNot(final Container left, final Container right)
+    {
+        if (left instanceof ArrayContainer)
+            return ((ArrayContainer) left).retain(right, false);
+
+        final long[] words = ((BitsContainer) left).words.clone();
+
+        right.clearIn(words);
+
+        return fromWords(words);
+    }
+
+    /**
+     * Pick the smaller container for a set of bits
+     */
+    private static Container fromWords(final long[] words)
+    {
+        int cardinality = 0;
+
+        for (long word : words)
+            cardinality += Long.bitCount(word);
+
+        if (cardinality == 0)
+            return null;
+
+        if (cardinality > ARRAY_LIMIT)
+            return new BitsContainer(words, cardinality);
+
+        final char[] values = new char[cardinality];
+        int count = 0;
+
+        for (int i = 0; i < WORDS; ++i)
+            for (long word = words[i]; word != 0; word &= word - 1)
+                values[count++] = (char) ((i << 6) + Long.numberOfTrailingZeros(word));
+
+        return new ArrayContainer(values, cardinality);
+    }
+
+    /**
+     * Lower 16 bits of the ids of a single key
+     */
+    private abstract static class Container
+    {
+        abstract int cardinality();
+
+        abstract boolean contains(char value);
+
+        // Either container may be returned, or null once empty
+        abstract Container add(char value);
+
+        abstract Container remove(char value);
+
+        abstract Container copy();
+
+        // Set or clear the container's values within a full set of words
+        abstract void setIn(long[] words);
+
+        abstract void clearIn(long[] words);
+
+        abstract void forEach(int high, IntConsumer action);
+    }
+
+    /**
+     * Container holding its values as a sorted array
+     */
+    private static final class ArrayContainer extends Container
+    {
+        private char[] values;
+        private int size;
+
+        ArrayContainer()
+        {
+            this(new char[4], 0);
+        }
+
+        ArrayContainer(final char[] values, final int size)
+        {
+            this.values = values;
+            this.size   = size;
+        }
+
+        @Override
+        int cardinality()
+        {
+            return size;
+        }
+
+        @Override
+        boolean contains(final char value)
+        {
+            return Arrays.binarySearch(values, 0, size, value) >= 0;
+        }
+
+        @Override
+        Container add(final char value)
+        {
+            // Ids are mostly handed out in ascending order so most land at the end
+            int position = (size == 0 || values[size - 1] < value) ? size
+                         : Arrays.binarySearch(values, 0, size, value);
+
+            if (position < 0)
+                position = -(position + 1);
+            else if (position < size)
+                return this;
+
+            if (size == ARRAY_LIMIT)
+            {
+                final long[] words = new long[WORDS];
+
+                setIn(words);
+                words[value >>> 6] |= 1L << value;
+
+                return new BitsContainer(words, size + 1);
+            }
+
+            if (size == values.length)
+                values = Arrays.copyOf(values, Math.min(ARRAY_LIMIT, size + (size >> 1) + 1));
+
+            System.arraycopy(values, position, values, position + 1, size - position);
+            values[position] = value;
+            ++size;
+
+            return this;
+        }
+
+        @Override
+        Container remove(final char value)
+        {
+            final int position = Arrays.binarySearch(values, 0, size, value);
+
+            if (position >= 0)
+            {
+                System.arraycopy(values, position + 1, values, position, size - position - 1);
+                --size;
+            }
+
+            return (size > 0) ? this : null;
+        }
+
+        @Override
+        Container copy()
+        {
+            return new ArrayContainer(Arrays.copyOf(values, size), size);
+        }
+
+        @Override
+        void setIn(final long[] words)
+        {
+            for (int i = 0; i < size; ++i)
+                words[values[i] >>> 6] |= 1L << values[i];
+        }
+
+        @Override
+        void clearIn(final long[] words)
+        {
+            for (int i = 0; i < size; ++i)
+                words[values[i] >>> 6] &= ~(1L << values[i]);
+        }
+
+        @Override
+        void forEach(final int high, final IntConsumer action)
+        {
+            for (int i = 0; i < size; ++i)
+                action.accept(high | values[i]);
+        }
+
+        /**
+         * Keep the values another container holds, or those it does not
+         */
+        Container retain(final Container other, final boolean held)
+        {
+            final char[] kept = new char[size];
+            int count = 0;
+
+            for (int i = 0; i < size; ++i)
+                if (other.contains(values[i]) == held)
+                    kept[count++] = values[i];
+
+            return (count > 0) ? new ArrayContainer(kept, count) : null;
+        }
+
+        /**
+         * Merge with another array container, the result fitting an array
+         */
+        Container merge(final ArrayContainer other)
+        {
+            final char[] merged = new char[size + other.size];
+            int count = 0;
+            int i = 0;
+            int j = 0;
+
+            while (i < size && j < other.size)
+            {
+                if (values[i] < other.values[j])
+                    merged[count++] = values[i++];
+                else if (values[i] > other.values[j])
+                    merged[count++] = other.values[j++];
+                else
+                {
+                    merged[count++] = values[i++];
+                    ++j;
+                }
+            }
+
+            while (i < size)
+                merged[count++] = values[i++];
+
+            while (j < other.size)
+                merged[count++] = other.values[j++];
+
+            return new ArrayContainer(merged, count);
+        }
+    }
+
+    /**
+     * Container holding its values as one bit each
+     */
+    private static final class BitsContainer extends Container
+    {
+        private final long[] words;
+        private int cardinality;
+
+        BitsContainer(final long[] words, final int cardinality)
+        {
+            this.words       = words;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        int cardinality()
+        {
+            return cardinality;
+        }
+
+        @Override
+        boolean contains(final char value)
+        {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        Container add(final char value)
+        {
+            if (!contains(value))
+            {
+                words[value >>> 6] |= 1L << value;
+                ++cardinality;
+            }
+
+            return this;
+        }
+
+        @Override
+        Container remove(final char value)
+        {
+            if (contains(value))
+            {
+                words[value >>> 6] &= ~(1L << value);
+
+                // Back to an array once the bits no longer pay off
+                if (--cardinality <= ARRAY_LIMIT)
+                    return fromWords(words);
+            }
+
+            return this;
+        }
+
+        @Override
+        Container copy()
+        {
+            return new BitsContainer(words.clone(), cardinality);
+        }
+
+        @Override
+        void setIn(final long[] others)
+        {
+            for (int i = 0; i < WORDS; ++i)
+                others[i] |= words[i];
+        }
+
+        @Override
+        void clearIn(final long[] others)
+        {
+            for (int i = 0; i < WORDS; ++i)
+                others[i] &= ~words[i];
+        }
+
+        @Override
+        void forEach(final int high, final IntConsumer action)
+        {
+            for (int i = 0; i < WORDS; ++i)
+                for (long word = words[i]; word != 0; word &= word - 1)
+                    action.accept(high | ((i << 6) + Long.numberOfTrailingZeros(word)));
+        }
+    }
+
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2014-2015 Rico Antonio Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * @author Rico Antonio Felix <ricoantoniofelix@yahoo.com>
+ */
+
+package com.rico.felix.data;
+
+/*
+ * Platform Dependencies
+ */
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Local Dependencies
+ */
+import com.rico.felix.models.Faculty;
+import com.rico.felix.models.Person;
+import com.rico.felix.models.Student;
+
+/*
+ * Local Dependency
+ */
+import com.rico.felix.auxiliary.MemberTypes;
+
+/**
+ * This class is used as a set of bitmap indexes over the attributes of the
+ * directory's records which take only a few values: the member type, the
+ * class type of students and the tenure of faculty.
+ *
+ * Every registered record is given an id, and every value of an attribute
+ * maps to a bitmap of the ids of the records holding it, so a question such
+ * as "all tenured faculty" or "all seniors" is answered by combining a few
+ * bitmaps rather than by inspecting every record.
+ */
+final class BitmapIndex
+{
+    // Ids standing in for the registered records within the bitmaps
+    private final Map<Person, Integer> ids = new HashMap<>();
+    private final Map<Integer, Person> records = new HashMap<>();
+    private int nextId;
+
+    // Ids of every registered record
+    private Bitmap all = new Bitmap();
+
+    // Ids of the records of each member type by ordinal
+    private final Bitmap[] types = new Bitmap[MemberTypes.values().length];
+
+    // Ids of the students of each class type
+    private final Map<String, Bitmap> classTypes = new HashMap<>();
+
+    // Ids of the tenured faculty
+    private Bitmap tenured = new Bitmap();
+
+    /*
+     * Default constructor for an object of this type
+     */
+    BitmapIndex()
+    {
+        for (int i = 0; i < types.length; ++i)
+            types[i] = new Bitmap();
+    }
+
+    /**
+     * Register a record's attributes with the index
+     *
+     * @param person - Record to register
+     *
+     * @return void
+     */
+    synchronized void add(final Person person)
+    {
+        if (ids.containsKey(person))
+            return;
+
+        final int id = nextId++;
+
+        ids.put(person, id);
+        records.put(id, person);
+
+        all.add(id);
+        types[Directory.memberTypeOf(person).ordinal()].add(id);
+
+        if (person instanceof Student)
+        {
+            final String classType = ((Student) person).getClassTypeStatus();
+
+            if (classType != null)
+                classTypes.computeIfAbsent(classType, k -> new Bitmap()).add(id);
+        }
+        else if (person instanceof Faculty && ((Faculty) person).isTenured())
+            tenured.add(id);
+    }
+
+    /**
+     * Register many records with the index at once, numbering them in key
+     * order so that the records behind a bitmap come out nearly sorted
+     *
+     * @param people - Records to register
+     *
+     * @return void
+     */
+    synchronized void addAll(final List<Person> people)
+    {
+        final List<Person> sorted = new ArrayList<>(people);
+
+        sorted.sort(Comparator.comparing(Person::getKey));
+        sorted.forEach(this::add);
+    }
+
+    /**
+     * Withdraw a record's attributes from the index
+     *
+     * @param person - Record to withdraw
+     *
+     * @return void
+     */
+    synchronized void remove(final Person person)
+    {
+        final Integer id = ids.remove(person);
+
+        if (id == null)
+            return;
+
+        records.remove(id);
+
+        all.remove(id);
+
+        for (Bitmap type : types)
+            type.remove(id);
+
+        for (Bitmap classType : classTypes.values())
+            classType.remove(id);
+
+        classTypes.values().removeIf(Bitmap::isEmpty);
+        tenured.remove(id);
+    }
+
+    /**
+     * Withdraw many records from the index at once
+     *
+     * @param people - Records to withdraw
+     *
+     * @return void
+     */
+    synchronized void removeAll(final List<Person> people)
+    {
+        people.forEach(this::remove);
+    }
+
+    /**
+     * Withdraw every record from the index
+     *
+     * @return void
+     */
+    synchronized void clear()
+    {
+        ids.clear();
+        records.clear();
+
+        all     = new Bitmap();
+        tenured = new Bitmap();
+
+        for (int i = 0; i < types.length; ++i)
+            types[i] = new Bitmap();
+
+        classTypes.clear();
+    }
+
+    /**
+     * Retrieve the ids of every registered record
+     *
+     * @return Bitmap - The ids
+     */
+    synchronized Bitmap all()
+    {
+        return all.copy();
+    }
+
+    /**
+     * Retrieve the ids of the records of a member type
+     *
+     * @param type - Member type of the records
+     *
+     * @return Bitmap - The ids
+     */
+    synchronized Bitmap ofType(final MemberTypes type)
+    {
+        return types[type.ordinal()].copy();
+    }
+
+    /**
+     * Retrieve the ids of the students of a class type
+     *
+     * @param classType - Class type of the students, such as "Senior"
+     *
+     * @return Bitmap - The ids
+     */
+    synchronized Bitmap ofClassType(final String classType)
+    {
+        final Bitmap students = classTypes.get(classType);
+
+        return (students != null) ? students.copy() : new Bitmap();
+    }
+
+    /**
+     * Retrieve the ids of the tenured faculty
+     *
+     * @return Bitmap - The ids
+     */
+    synchronized Bitmap tenured()
+    {
+        return tenured.copy();
+    }
+
+    /**
+     * Retrieve the records standing behind ids, skipping ids of records
+     * withdrawn since
+     *
+     * @param selected - Ids of the records
+     *
+     * @return List<Person> - The records in the order of their ids
+     */
+    synchronized List<Person> recordsOf(final Bitmap selected)
+    {
+        final List<Person> people = new ArrayList<>(selected.cardinality());
+
+        selected.forEach(id -> {
+            final Person person = records.get(id);
+
+            if (person != null)
+                people.add(person);
+        });
+
+        return people;
+    }
+
+}
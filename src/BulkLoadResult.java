@@ -0,0 +1,131 @@
+/*
+ * Copyright 2014-2015 Rico Antonio Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * @author Rico Antonio Felix <ricoantoniofelix@yahoo.com>
+ */
+
+package com.rico.felix.data;
+
+/*
+ * Platform Dependencies
+ */
+import java.util.Collections;
+import java.util.List;
+
+/*
+ * Local Dependency
+ */
+import com.rico.felix.models.Person;
+
+/**
+ * This class is used to report the outcome of loading many records into
+ * the directory at once.
+ */
+public final class BulkLoadResult
+{
+    // Number of records added to the directory
+    private final int added;
+
+    // Records refused by validation along with the reasons why
+    private final List<Rejection> rejected;
+
+    /**
+     * Parameterized constructor for an object of this type
+     *
+     * @param added    - Number of records added to the directory
+     * @param rejected - Records refused by validation
+     */
+    BulkLoadResult(final int added, final List<Rejection> rejected)
+    {
+        this.added    = added;
+        this.rejected = Collections.unmodifiableList(rejected);
+    }
+
+    /**
+     * Retrieve the number of records added to the directory
+     *
+     * @return int - Number of records added
+     */
+    public int getAdded()
+    {
+        return added;
+    }
+
+    /**
+     * Retrieve the records refused by validation in their original order
+     *
+     * @return List<Rejection> - Refused records along with the reasons why
+     */
+    public List<Rejection> getRejected()
+    {
+        return rejected;
+    }
+
+    /**
+     * This class is used to pair a refused record with the reason it was refused.
+     */
+    public static final class Rejection
+    {
+        private final int position;
+        private final Person person;
+        private final String reason;
+
+        Rejection(final int position, final Person person, final String reason)
+        {
+            this.position = position;
+            this.person   = person;
+            this.reason   = reason;
+        }
+
+        /**
+         * Retrieve the position of the record within the loaded sequence
+         *
+         * @return int - Zero based position of the record
+         */
+        public int getPosition()
+        {
+            return position;
+        }
+
+        /**
+         * Retrieve the refused record
+         *
+         * @return Person - The refused record, null if the sequence held a null
+         */
+        public Person getPerson()
+        {
+            return person;
+        }
+
+        /**
+         * Retrieve the reason the record was refused
+         *
+         * @return String - Description of the failed validation
+         */
+        public String getReason()
+        {
+            return reason;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("Record %d: %s", position, reason);
+        }
+    }
+
+}
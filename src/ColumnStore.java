@@ -0,0 +1,539 @@
+/*
+ * Copyright 2014-2015 Rico Antonio Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * @author Rico Antonio Felix <ricoantoniofelix@yahoo.com>
+ */
+
+package com.rico.felix.data;
+
+/*
+ * Platform Dependencies
+ */
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/*
+ * Platform Dependencies
+ */
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/*
+ * Local Dependencies
+ */
+import com.rico.felix.models.Faculty;
+import com.rico.felix.models.Person;
+import com.rico.felix.models.PersonKey;
+import com.rico.felix.models.Staff;
+import com.rico.felix.models.Student;
+
+/*
+ * Local Dependency
+ */
+import com.rico.felix.auxiliary.MemberTypes;
+
+/**
+ * This class is used to hold the saved records in memory as columns rather
+ * than as record objects.
+ *
+ * Every field of a member type is a column of its own, the records of the
+ * type lying in key order across the columns. Text fields are stored as
+ * numbers into dictionaries holding every distinct value once as UTF-8, so
+ * a name shared by a thousand people costs four bytes per person, and the
+ * tenure of the faculty takes a bit each. A dictionary stops looking for
+ * duplicates once most of its values turn out distinct, as e-mail addresses
+ * do, keeping them packed without the lookup table.
+ *
+ * Record objects are built from the columns only when read and handed out
+ * again while still reachable, so the heap holds the columns and whichever
+ * records are in use.
+ */
+final class ColumnStore implements SavedStore
+{
+    // Size of the buffer between the snapshot file and the codec
+    private static final int BUFFER_SIZE = 0x10000;
+
+    // Initial number of rows of a section and values of a dictionary
+    private static final int INITIAL_CAPACITY = 0x400;
+
+    // Values added to a dictionary before it judges how many are duplicates
+    private static final int SAMPLE_SIZE = 0x1000;
+
+    private final Section[] sections;
+
+    // Shared by the sections so a name recurring across types is kept once
+    private final Dictionary names   = new Dictionary();
+    private final Dictionary emails  = new Dictionary();
+    private final Dictionary details = new Dictionary();
+    private final Dictionary offices = new Dictionary();
+
+    // Records built from the columns and still in use
+    private final DecodedRecords decoded = new DecodedRecords();
+
+    /*
+     * Default constructor for an object of this type
+     */
+    private ColumnStore()
+    {
+        this.sections = new Section[MemberTypes.values().length];
+
+        for (MemberTypes type : MemberTypes.values())
+            sections[type.ordinal()] = new Section(type);
+    }
+
+    /**
+     * Read a saved database into columns
+     *
+     * @param path - Location of the saved database
+     *
+     * @return ColumnStore - The database's records, or null if there is no
+     *                       file or it predates blocks sorted per member type
+     *
+     * @throws IOException - If the file cannot be read or is corrupt
+     */
+    static ColumnStore read(final Path path) throws IOException
+    {
+        if (!Files.exists(path))
+            return null;
+
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(
+                                       Files.newInputStream(path), BUFFER_SIZE)))
+        {
+            if (dis.readInt() != PersonCodec.MAGIC)
+                return null;
+
+            dis.mark(1);
+
+            final byte version = dis.readByte();
+
+            dis.reset();
+
+            final int count = PersonCodec.readHeader(dis);
+
+            if (version < PersonCodec.BLOCKED)
+                return null;
+
+            final ColumnStore store = new ColumnStore();
+
+            for (int read = 0; read < count;)
+            {
+                final byte[] records = PersonCodec.readBlock(dis);
+                final DataInputStream block =
+                    new DataInputStream(new ByteArrayInputStream(records));
+
+                for (int i = PersonCodec.blockCount(records); i > 0; --i, ++read)
+                    store.append(PersonCodec.read(block));
+            }
+
+            for (Section section : store.sections)
+                section.trim();
+
+            store.names.trim();
+            store.emails.trim();
+            store.details.trim();
+            store.offices.trim();
+
+            return store;
+        }
+    }
+
+    /**
+     * Retrieve the records of a member type
+     *
+     * @param type - Member type of the records
+     *
+     * @return Section - The type's records in key order
+     */
+    @Override
+    public Section section(final MemberTypes type)
+    {
+        return sections[type.ordinal()];
+    }
+
+    /**
+     * Add a record read from the snapshot to the end of its type's columns
+     */
+    private void append(final Person person) throws IOException
+    {
+        sections[Directory.memberTypeOf(person).ordinal()].append(person);
+    }
+
+    /**
+     * This class is used to hold the records of a single member type as
+     * columns in key order.
+     */
+    final class Section implements SavedStore.Section
+    {
+        private final MemberTypes type;
+
+        // Number of records
+        private int size;
+
+        private long[] serials;
+        private int[] firstNames;
+        private int[] lastNames;
+        private int[] emailAddresses;
+
+        // Class type of students or title of staff, unused for faculty
+        private int[] detail;
+
+        // Office of staff and faculty, unused for students
+        private int[] office;
+
+        // Tenure of faculty, unused otherwise
+        private final BitSet tenured = new BitSet();
+
+        Section(final MemberTypes type)
+        {
+            this.type           = type;
+            this.serials        = new long[INITIAL_CAPACITY];
+            this.firstNames     = new int[INITIAL_CAPACITY];
+            this.lastNames      = new int[INITIAL_CAPACITY];
+            this.emailAddresses = new int[INITIAL_CAPACITY];
+            this.detail         = (type != MemberTypes.FACULTY) ? new int[INITIAL_CAPACITY] : null;
+            this.office         = (type != MemberTypes.STUDENT) ? new int[INITIAL_CAPACITY] : null;
+        }
+
+        @Override
+        public int size()
+        {
+            return size;
+        }
+
+        /**
+         * Retrieve the key of the record at a position in key order from the
+         * name and serial columns, without building the record
+         */
+        @Override
+        public PersonKey keyAt(final int index)
+        {
+            return PersonKey.of(nameAt(index), serials[index]);
+        }
+
+        /**
+         * Retrieve the record at a position in key order, building it from
+         * the columns unless still in use
+         */
+        @Override
+        public Person recordAt(final int index)
+        {
+            return entryAt(index).getValue();
+        }
+
+        /**
+         * Count the records whose key precedes a key by binary search over
+         * the columns
+         */
+        @Override
+        public int rank(final PersonKey key)
+        {
+            int low  = 0;
+            int high = size;
+
+            while (low < high)
+            {
+                final int middle = (low + high) >>> 1;
+
+                if (compare(middle, key) < 0)
+                    low = middle + 1;
+                else
+                    high = middle;
+            }
+
+            return low;
+        }
+
+        /**
+         * Determine whether a record is associated with a key, building no
+         * record
+         */
+        @Override
+        public boolean contains(final PersonKey key)
+        {
+            final int index = rank(key);
+
+            return index < size && compare(index, key) == 0;
+        }
+
+        /**
+         * Retrieve the record associated with a key or null
+         */
+        @Override
+        public Person get(final PersonKey key)
+        {
+            final int index = rank(key);
+
+            return (index < size && compare(index, key) == 0) ? recordAt(index) : null;
+        }
+
+        /**
+         * Iterate over the records within a range of keys in key order
+         */
+        @Override
+        public Iterator<Map.Entry<PersonKey, Person>> iterator(final PersonKey from,
+                final boolean fromInclusive, final PersonKey to, final boolean toInclusive)
+        {
+            int start = (from == null) ? 0 : rank(from);
+            int end   = (to == null) ? size : rank(to);
+
+            if (from != null && !fromInclusive && start < size && compare(start, from) == 0)
+                ++start;
+
+            if (to != null && toInclusive && end < size && compare(end, to) == 0)
+                ++end;
+
+            final int first = start;
+            final int last  = Math.max(start, end);
+
+            return new Iterator<Map.Entry<PersonKey, Person>>()
+            {
+                private int next = first;
+
+                @Override
+                public boolean hasNext()
+                {
+                    return next < last;
+                }
+
+                @Override
+                public Map.Entry<PersonKey, Person> next()
+                {
+                    if (next >= last)
+                        throw new NoSuchElementException();
+
+                    return entryAt(next++);
+                }
+            };
+        }
+
+        /**
+         * Compare the saved key of the record at a position with a key
+         */
+        private int compare(final int index, final PersonKey key)
+        {
+            final int byName = nameAt(index).compareTo(key.getName());
+
+            return (byName != 0) ? byName : Long.compare(serials[index], key.getSerial());
+        }
+
+        /**
+         * Retrieve the name in key order of the record at a position
+         */
+        private String nameAt(final int index)
+        {
+            return names.get(lastNames[index]) + " " + names.get(firstNames[index]);
+        }
+
+        /**
+         * Retrieve the record at a position along with its saved key
+         */
+        private Map.Entry<PersonKey, Person> entryAt(final int index)
+        {
+            return decoded.entryAt(((long) type.ordinal() << 32) | index, () -> build(index));
+        }
+
+        /**
+         * Build the record at a position from the columns
+         */
+        private Person build(final int index)
+        {
+            final String firstName = names.get(firstNames[index]);
+            final String lastName  = names.get(lastNames[index]);
+            final String email     = emails.get(emailAddresses[index]);
+            final long serial      = serials[index];
+
+            switch (type)
+            {
+                case STAFF:
+                    return new Staff(details.get(detail[index]), firstName, lastName, email,
+                                     offices.get(office[index]), serial);
+
+                case FACULTY:
+                    return new Faculty(firstName, lastName, email, tenured.get(index),
+                                       offices.get(office[index]), serial);
+
+                default:
+                    return new Student(firstName, lastName, email,
+                                       details.get(detail[index]), serial);
+            }
+        }
+
+        /**
+         * Add a record to the end of the columns, which must keep them in
+         * key order
+         */
+        private void append(final Person person) throws IOException
+        {
+            if (size > 0 && compare(size - 1, person.getKey()) >= 0)
+                throw new IOException("Database records are out of order");
+
+            if (size == serials.length)
+                resize(size + (size >> 1));
+
+            serials[size]        = person.getKey().getSerial();
+            firstNames[size]     = names.add(person.getFirstName());
+            lastNames[size]      = names.add(person.getLastName());
+            emailAddresses[size] = emails.add(person.getEmail());
+
+            if (person instanceof Student)
+                detail[size] = details.add(((Student) person).getClassTypeStatus());
+            else if (person instanceof Staff)
+            {
+                detail[size] = details.add(((Staff) person).getTitle());
+                office[size] = offices.add(((Staff) person).getOffice());
+            }
+            else
+            {
+                office[size] = offices.add(((Faculty) person).getOffice());
+                tenured.set(size, ((Faculty) person).isTenured());
+            }
+
+            ++size;
+        }
+
+        /**
+         * Release the spare capacity of the columns
+         */
+        private void trim()
+        {
+            resize(size);
+        }
+
+        /**
+         * Grow or shrink the columns to a number of rows
+         */
+        private void resize(final int capacity)
+        {
+            serials        = Arrays.copyOf(serials, capacity);
+            firstNames     = Arrays.copyOf(firstNames, capacity);
+            lastNames      = Arrays.copyOf(lastNames, capacity);
+            emailAddresses = Arrays.copyOf(emailAddresses, capacity);
+
+            if (detail != null)
+                detail = Arrays.copyOf(detail, capacity);
+
+            if (office != null)
+                office = Arrays.copyOf(office, capacity);
+        }
+    }
+
+    /**
+     * This class is used to number distinct strings, holding each as UTF-8
+     * within a single array.
+     */
+    private static final class Dictionary
+    {
+        // Encoded values back to back, value i spanning starts[i] to starts[i + 1]
+        private byte[] bytes  = new byte[INITIAL_CAPACITY << 4];
+        private int[]  starts = new int[INITIAL_CAPACITY + 1];
+
+        // Number of values
+        private int count;
+
+        // Number of values added, duplicates included
+        private int added;
+
+        // Number of each value added so far, or null once duplicates are
+        // rare enough not to be worth looking for
+        private Map<String, Integer> numbers = new HashMap<>();
+
+        /**
+         * Number a value, reusing the number of an equal value added before
+         * while duplicates are still looked for
+         *
+         * @param value - The value or null
+         *
+         * @return int - Number of the value, or -1 for null
+         */
+        int add(final String value)
+        {
+            if (value == null)
+                return -1;
+
+            ++added;
+
+            if (numbers != null)
+            {
+                final Integer known = numbers.get(value);
+
+                if (known != null)
+                    return known;
+
+                // Mostly distinct values gain nothing from the lookup table
+                if (added >= SAMPLE_SIZE && count > added >> 1)
+                    numbers = null;
+                else
+                    numbers.put(value, count);
+            }
+
+            final byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+            final int start = starts[count];
+
+            if (start + encoded.length > bytes.length)
+                bytes = Arrays.copyOf(bytes, Math.max(start + encoded.length,
+                                                      bytes.length + (bytes.length >> 1)));
+
+            if (count + 1 == starts.length)
+                starts = Arrays.copyOf(starts, starts.length + (starts.length >> 1));
+
+            System.arraycopy(encoded, 0, bytes, start, encoded.length);
+            starts[count + 1] = start + encoded.length;
+
+            return count++;
+        }
+
+        /**
+         * Retrieve a value by number
+         *
+         * @param number - Number of the value, or -1 for null
+         *
+         * @return String - The value
+         */
+        String get(final int number)
+        {
+            if (number < 0)
+                return null;
+
+            final int start = starts[number];
+
+            return new String(bytes, start, starts[number + 1] - start, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Release the lookup table and the spare capacity once all values
+         * are added
+         *
+         * @return void
+         */
+        void trim()
+        {
+            numbers = null;
+            bytes   = Arrays.copyOf(bytes, starts[count]);
+            starts  = Arrays.copyOf(starts, count + 1);
+        }
+    }
+
+}
@@ -25,25 +25,101 @@ package com.rico.felix.data;
  */
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 
 /*
- * Platform Dependency
+ * Platform Dependencies
+ */
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Platform Dependencies
  */
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
 
 /*
- * Local Dependency
+ * Platform Dependencies
+ */
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+ * Platform Dependencies
+ */
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.zip.Deflater;
+
+/*
+ * Local Dependencies
  */
 import com.rico.felix.models.Person;
+import com.rico.felix.models.PersonKey;
+
+/*
+ * Local Dependencies
+ */
+import com.rico.felix.auxiliary.MemberTypes;
+import com.rico.felix.auxiliary.StringPool;
 
 /**
  * This class is used to persist and restore runtime data.
+ *
+ * The records live in a snapshot file rewritten only by compactions. Every
+ * change is appended to a write-ahead log as it happens, and the directory
+ * tracks the keys changed since the last save. Saving writes the latest state
+ * of just those keys to a new segment file and empties the log, so a save
+ * costs as much as the records it changed. Once the segments make up too much
+ * of the saved bytes a background compaction merges them into a fresh
+ * snapshot, which keeps restoring fast.
+ *
+ * The system property com.rico.felix.sync decides when the log is forced to
+ * disk. The default, "commit", acknowledges a change only once it is forced,
+ * changes made concurrently sharing a single write and force; "<n>ms" forces
+ * every n milliseconds and "<n>records" every n records, risking at most
+ * that many changes on a power failure for fewer forces.
+ *
+ * The snapshot stores the records of each member type in compressed blocks
+ * of about 16 KB, the leaves of a B+tree of 4 KB pages. Started with the
+ * system property com.rico.felix.store set to "mapped", the snapshot is
+ * mapped into memory rather than read, pages and blocks being decoded only
+ * when touched, so startup takes the same time and heap for any number of
+ * records and a lookup reads one page per level of the tree and one block.
+ * Set to "columnar", the snapshot is read into dictionary-encoded columns
+ * instead, a fraction of the heap taken by record objects, which are built
+ * only when read.
+ *
+ * Saves requested through saveAsync run on a background thread against a
+ * snapshot of the directory, so edits carry on while a save is written and
+ * requests arriving before a save starts share that save. Restoring through
+ * restoreAsync runs on the same thread and publishes the records in batches
+ * as they are read, so the directory is in use long before it is complete.
  */
 public class Database
 {
@@ -53,19 +129,270 @@ public class Database
     private Database()
     {}
 
+    // Size of the buffers between the snapshot file and the codec
+    private static final int BUFFER_SIZE = 0x10000;
+
+    // Records of the first batch published while reading the snapshot
+    private static final int FIRST_BATCH = 0x400;
+
+    // Records restored between two progress reports
+    private static final int REPORT_INTERVAL = 0x400;
+
+    // Bytes of segments below which they are never compacted
+    private static final long COMPACTION_MINIMUM = 0x100000;
+
+    // Share of the saved bytes held by segments beyond which they are compacted
+    private static final double GARBAGE_RATIO = 0.5;
+
+    // Names of the segment files, numbered in the order they are written
+    private static final String SEGMENT_FORMAT  = "directory.%06d.seg";
+    private static final String SEGMENT_PATTERN = "directory.*.seg";
+
+    // Files holding the records, the changes since and the changes of a
+    // save still in progress
+    private static final Path SNAPSHOT = Paths.get("directory.dat");
+    private static final Path LOG      = Paths.get("directory.wal");
+    private static final Path ARCHIVE  = Paths.get("directory.wal.old");
+
+    // File a snapshot is written to before replacing the previous one
+    private static final Path PENDING  = Paths.get("directory.dat.tmp");
+
+    // Whether the snapshot is mapped into memory rather than read on restore
+    private static final boolean MAPPED =
+        "mapped".equals(System.getProperty("com.rico.felix.store"));
+
+    // Whether the snapshot is held as dictionary-encoded columns
+    private static final boolean COLUMNAR =
+        "columnar".equals(System.getProperty("com.rico.felix.store"));
+
+    // When the log forces changes to disk: "commit" before every change is
+    // acknowledged, "<n>ms" every n milliseconds or "<n>records" every n records
+    private static final WriteAheadLog.SyncPolicy SYNC_POLICY =
+        WriteAheadLog.SyncPolicy.parse(System.getProperty("com.rico.felix.sync", "commit"));
+
+    // Log of the changes made since the last save, open once restored
+    private static WriteAheadLog log;
+
+    // Sequence number of the latest segment and the bytes of all segments
+    private static long segmentSequence;
+    private static long segmentBytes;
+
+    // Compaction waiting for or running on the saver thread, or null
+    private static CompletableFuture<Void> pendingCompaction;
+
+    // Thread writing the saves requested through saveAsync one at a time
+    private static final ExecutorService saver = Executors.newSingleThreadExecutor(task -> {
+        final Thread thread = new Thread(task, "Directory Saver");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Save requested but not yet started, joined by any further request
+    private static final AtomicReference<CompletableFuture<Void>> pendingSave =
+        new AtomicReference<>();
+
+    // Whether the snapshot read predates the current format, whose records
+    // lack serial numbers and so must be written out again at once
+    private static boolean outdatedSnapshot;
+
     /**
      * Persist runtime data in a file on disk
      *
+     * Only the records changed since the last save are written, to a new
+     * segment, after which the write-ahead log is emptied. Once the segments
+     * make up too much of the saved bytes a compaction merges them into the
+     * snapshot in the background.
+     *
      * @return void
      */
     public static void save()
     {
-        try (BufferedOutputStream bos = new BufferedOutputStream(
-                                            new FileOutputStream("directory.dat"));
-             ObjectOutputStream oos = new ObjectOutputStream(bos);
-            )
+        try
+        {
+            commit();
+        }
+        catch (IOException ioe)
+        {
+            ioErrorMessage();
+        }
+    }
+
+    /**
+     * Persist runtime data in a file on disk without waiting for the save
+     *
+     * The save runs on a background thread and covers every change made
+     * before it starts. Should a save already be waiting to start, the
+     * request joins it rather than queuing another one.
+     *
+     * @return CompletableFuture<Void> - Completed once the save is on disk
+     *                                   along with any compaction it started,
+     *                                   or exceptionally with an IOException
+     *                                   describing the failure
+     */
+    public static CompletableFuture<Void> saveAsync()
+    {
+        for (;;)
+        {
+            final CompletableFuture<Void> pending = pendingSave.get();
+
+            if (pending != null)
+                return pending;
+
+            final CompletableFuture<Void> request = new CompletableFuture<>();
+
+            if (pendingSave.compareAndSet(null, request))
+            {
+                saver.execute(() -> {
+                    // Changes made from here on need a save of their own
+                    pendingSave.compareAndSet(request, null);
+
+                    try
+                    {
+                        final CompletableFuture<Void> compaction = commit();
+
+                        if (compaction == null)
+                            request.complete(null);
+                        else
+                            compaction.whenComplete((done, failure) -> {
+                                if (failure == null)
+                                    request.complete(null);
+                                else
+                                    request.completeExceptionally(new IOException(
+                                        "Changes were saved but could not be compacted: "
+                                        + failure.getMessage(), failure));
+                            });
+                    }
+                    catch (IOException | RuntimeException e)
+                    {
+                        request.completeExceptionally(new IOException(
+                            "Changes could not be saved: " + e.getMessage(), e));
+                    }
+                });
+
+                return request;
+            }
+        }
+    }
+
+    /**
+     * Write the records changed since the last save to a new segment and
+     * empty the log, or write the snapshot if nothing was restored, then
+     * schedule a compaction once one is due
+     *
+     * @return CompletableFuture<Void> - The compaction scheduled or already
+     *                                   pending, or null if none is due
+     *
+     * @throws IOException - If a file cannot be written
+     */
+    private static synchronized CompletableFuture<Void> commit() throws IOException
+    {
+        if (log == null)
+        {
+            compact(Directory.snapshot(), Long.MAX_VALUE);
+            return null;
+        }
+
+        final Set<PersonKey> changed;
+        final Snapshot snapshot;
+
+        // With every writer held off, the changes logged before the rotation
+        // are exactly those marked changed and those the version taken holds,
+        // so the version holds nothing the segment and the log lack
+        Directory.lockAll();
+        try
+        {
+            log.rotate(ARCHIVE);
+
+            changed  = Directory.drainDirty();
+            snapshot = Directory.snapshot();
+        }
+        finally
+        {
+            Directory.unlockAll();
+        }
+
+        // The archived log keeps the changes until a segment holds them, and
+        // a later save appends to it rather than replacing it
+        if (!changed.isEmpty())
+        {
+            try
+            {
+                writeSegment(changed, snapshot);
+            }
+            catch (IOException | RuntimeException e)
+            {
+                Directory.restoreDirty(changed);
+                throw e;
+            }
+        }
+
+        Files.deleteIfExists(ARCHIVE);
+
+        return compactionDue() ? scheduleCompaction(snapshot) : null;
+    }
+
+    /**
+     * Compact the segments written so far on the saver thread unless a
+     * compaction is pending already
+     *
+     * A failed compaction leaves the segments in place, so the next save
+     * finds a compaction still due and tries again.
+     *
+     * @param snapshot - Version of the directory holding exactly the saved records
+     *
+     * @return CompletableFuture<Void> - Completed once the compaction is done, or
+     *                                   exceptionally with the error met
+     */
+    private static synchronized CompletableFuture<Void> scheduleCompaction(
+        final Snapshot snapshot)
+    {
+        if (pendingCompaction != null)
+            return pendingCompaction;
+
+        final long through = segmentSequence;
+        final CompletableFuture<Void> compaction = new CompletableFuture<>();
+
+        pendingCompaction = compaction;
+
+        saver.execute(() -> {
+            Exception failure = null;
+
+            try
+            {
+                compact(snapshot, through);
+            }
+            catch (IOException | RuntimeException e)
+            {
+                failure = e;
+            }
+
+            synchronized (Database.class)
+            {
+                pendingCompaction = null;
+            }
+
+            if (failure == null)
+                compaction.complete(null);
+            else
+                compaction.completeExceptionally(failure);
+        });
+
+        return compaction;
+    }
+
+    /**
+     * Drop the changes made since the last save
+     *
+     * @return void
+     */
+    public static synchronized void discard()
+    {
+        if (log == null)
+            return;
+
+        try
         {
-            oos.writeObject(Directory.getFilingSystem());
+            log.discard();
         }
         catch (IOException ioe)
         {
@@ -78,22 +405,264 @@ public class Database
      *
      * @return boolean - true if restoration succeeded, false otherwise
      */
-    @SuppressWarnings("unchecked")
     public static boolean restore()
     {
-        try (BufferedInputStream bis = new BufferedInputStream(
-                                            new FileInputStream("directory.dat"));
-             ObjectInputStream ois = new ObjectInputStream(bis);
-            )
+        return restore((loaded, expected) -> {});
+    }
+
+    /**
+     * Restore persisted data if any on a background thread, publishing the
+     * records to the directory in batches as they are read
+     *
+     * The directory can be queried and edited from the start, a record
+     * changed before its saved version arrives keeping the change. Saves
+     * requested meanwhile wait for the restore to finish.
+     *
+     * @param progress - Receiver of the number of records restored so far and
+     *                   of the number expected, called on the restoring thread
+     *
+     * @return CompletableFuture<Boolean> - Completed with true if restoration
+     *                                      succeeded, false otherwise
+     */
+    public static CompletableFuture<Boolean> restoreAsync(
+        final BiConsumer<Integer, Integer> progress)
+    {
+        return CompletableFuture.supplyAsync(() -> restore(progress), saver);
+    }
+
+    /**
+     * Restore persisted data, the snapshot being read or mapped first, the
+     * segments applied on top of it in order and the changes of the
+     * write-ahead log last
+     *
+     * The log is read up front and reopened before any record is published,
+     * so edits made while restoring are logged after the changes it held.
+     * Those changes were never saved, so they count as changed for the next
+     * save.
+     *
+     * @param listener - Receiver of the number of records restored so far and
+     *                   of the number expected
+     *
+     * @return boolean - true if restoration succeeded, false otherwise
+     */
+    private static synchronized boolean restore(final BiConsumer<Integer, Integer> listener)
+    {
+        try
         {
-            return Directory.setFilingSystem((TreeMap<String, Person>)ois.readObject());
+            final Progress progress = new Progress(listener);
+
+            // An archived log remains if a save was interrupted
+            final boolean interrupted = Files.exists(ARCHIVE);
+            final SavedStore store = MAPPED ? MappedStore.open(SNAPSHOT)
+                                   : COLUMNAR ? ColumnStore.read(SNAPSHOT) : null;
+            final List<Path> segments = segments();
+            final Map<PersonKey, Person> recovered = new LinkedHashMap<>();
+            boolean restored;
+
+            if (log != null)
+                log.close();
+
+            Directory.setLog(null);
+
+            // The restored records replace the current ones, whose pooled
+            // values are released along with them
+            StringPool.renew();
+
+            WriteAheadLog.replay(ARCHIVE, person -> recovered.put(person.getKey(), person),
+                                 key -> recovered.put(key, null));
+
+            final long intact = WriteAheadLog.replay(LOG,
+                                    person -> recovered.put(person.getKey(), person),
+                                    key -> recovered.put(key, null));
+
+            if (store != null)
+                Directory.setBase(store);
+            else
+            {
+                Directory.setRecords(Collections.<Person>emptyList());
+                reserveSerials();
+            }
+
+            segmentSequence = segments.isEmpty() ? 0
+                            : sequenceOf(segments.get(segments.size() - 1));
+            segmentBytes    = 0;
+
+            for (Path segment : segments)
+            {
+                segmentBytes += Files.size(segment);
+                progress.expect(countOf(segment));
+            }
+
+            progress.expect(recovered.size());
+
+            log = new WriteAheadLog(LOG, intact, SYNC_POLICY);
+            Directory.setLog(log);
+
+            if (store != null)
+            {
+                outdatedSnapshot = false;
+                restored = true;
+
+                progress.expect(Directory.snapshot().size());
+                progress.advance(Directory.snapshot().size());
+            }
+            else
+            {
+                restored = readSnapshot(progress);
+
+                // A snapshot predating the paged block index cannot be mapped,
+                // nor one predating blocks sorted per type held as columns
+                outdatedSnapshot |= (MAPPED || COLUMNAR) && restored;
+            }
+
+            // Later segments win over earlier ones for the same key
+            final Map<PersonKey, Person> changes = new LinkedHashMap<>();
+
+            for (Path segment : segments)
+                progress.advance(readSegment(segment,
+                                     person -> changes.put(person.getKey(), person),
+                                     key -> changes.put(key, null)));
+
+            publish(changes, false);
+
+            // Version holding exactly the saved records unless edited already
+            final Snapshot saved = Directory.pristine();
+
+            publish(recovered, true);
+            progress.advance(recovered.size());
+            progress.finish();
+
+            // A snapshot in an outdated format or a log left over by an
+            // interrupted save is folded into a fresh snapshot at once
+            if (interrupted || outdatedSnapshot)
+            {
+                compact(Directory.snapshot(), segmentSequence);
+                Files.deleteIfExists(ARCHIVE);
+            }
+            else if (saved != null && compactionDue())
+            {
+                // A failure leaves the compaction due, the next save retries
+                // and reports it
+                scheduleCompaction(saved);
+            }
+
+            return restored || !segments.isEmpty() || intact > 0;
         }
         catch (IOException ioe)
         {
-            if (Directory.getFilingSystem().isEmpty())
-                ; // Application has no records in the database which is okay
+            ioErrorMessage();
+        }
+        return false;
+    }
+
+    /**
+     * Publish a set of changes to the directory in one batch
+     *
+     * @param changes - Records keyed by their keys, null standing for a removal
+     * @param unsaved - Whether the changes were never saved
+     *
+     * @return void
+     */
+    private static void publish(final Map<PersonKey, Person> changes, final boolean unsaved)
+    {
+        final List<Person> stored = new ArrayList<>(changes.size());
+        final List<PersonKey> removed = new ArrayList<>();
+
+        for (Map.Entry<PersonKey, Person> change : changes.entrySet())
+        {
+            if (change.getValue() != null)
+                stored.add(change.getValue());
             else
-                ioErrorMessage();
+                removed.add(change.getKey());
+        }
+
+        if (!stored.isEmpty() || !removed.isEmpty())
+            Directory.load(stored, removed, unsaved);
+    }
+
+    /**
+     * Read the snapshot file, publishing its records to the directory in
+     * batches each as large as all the batches before it, so the first
+     * records show up at once while the total merging work stays linear
+     *
+     * @param progress - Tally of the records restored so far
+     *
+     * @return boolean - true if a snapshot was read, false if there is none
+     *
+     * @throws IOException - If the snapshot cannot be read
+     */
+    private static boolean readSnapshot(final Progress progress) throws IOException
+    {
+        if (!Files.exists(SNAPSHOT))
+            return false;
+
+        try (BufferedInputStream bis = new BufferedInputStream(
+                                            new FileInputStream(SNAPSHOT.toFile()),
+                                            BUFFER_SIZE);
+             DataInputStream dis = new DataInputStream(bis);
+            )
+        {
+            bis.mark(Integer.BYTES + 1);
+
+            final int magic = dis.readInt();
+            final byte version = dis.readByte();
+
+            bis.reset();
+
+            if (magic == PersonCodec.MAGIC)
+            {
+                dis.readInt();
+
+                final int count = PersonCodec.readHeader(dis);
+
+                progress.expect(count);
+
+                List<Person> batch = new ArrayList<>(FIRST_BATCH);
+                int published = 0;
+
+                // Records of the current block, if the records are compressed
+                DataInputStream block = null;
+                int remaining = 0;
+
+                for (int i = 0; i < count; ++i)
+                {
+                    if (version >= PersonCodec.BLOCKED && remaining-- == 0)
+                    {
+                        final byte[] records = PersonCodec.readBlock(dis);
+
+                        block     = new DataInputStream(new ByteArrayInputStream(records));
+                        remaining = PersonCodec.blockCount(records) - 1;
+                    }
+
+                    batch.add(PersonCodec.read((block != null) ? block : dis));
+                    progress.advance(1);
+
+                    if (batch.size() >= Math.max(FIRST_BATCH, published) || i == count - 1)
+                    {
+                        Directory.load(batch, Collections.<PersonKey>emptyList(), false);
+
+                        published += batch.size();
+                        batch = new ArrayList<>(published);
+                    }
+                }
+
+                outdatedSnapshot = false;
+            }
+            else
+            {
+                final Map<PersonKey, Person> records = new LinkedHashMap<>();
+
+                bis.reset();
+                migrateSnapshot(bis, records);
+
+                progress.expect(records.size());
+                publish(records, false);
+                progress.advance(records.size());
+
+                outdatedSnapshot = true;
+            }
+
+            return true;
         }
         catch (ClassNotFoundException cnfe)
         {
@@ -103,6 +672,386 @@ public class Database
         return false;
     }
 
+    /**
+     * Reserve the serial numbers of a snapshot's records before reading them,
+     * so records created while the snapshot is read never take one, which
+     * the footer of the current format makes possible
+     *
+     * @return void
+     *
+     * @throws IOException - If the snapshot cannot be read
+     */
+    private static void reserveSerials() throws IOException
+    {
+        if (!Files.exists(SNAPSHOT))
+            return;
+
+        try (FileChannel channel = FileChannel.open(SNAPSHOT, StandardOpenOption.READ))
+        {
+            final long size = channel.size();
+
+            if (size < Integer.BYTES + 1 + PersonCodec.FOOTER_SIZE)
+                return;
+
+            final ByteBuffer header = ByteBuffer.allocate(Integer.BYTES + 1);
+            final ByteBuffer footer = ByteBuffer.allocate(PersonCodec.FOOTER_SIZE);
+
+            while (header.hasRemaining())
+                if (channel.read(header, header.position()) < 0)
+                    return;
+
+            while (footer.hasRemaining())
+                if (channel.read(footer, size - PersonCodec.FOOTER_SIZE + footer.position()) < 0)
+                    return;
+
+            if (header.getInt(0) == PersonCodec.MAGIC && header.get(Integer.BYTES) >= 0x2
+                    && footer.getInt(PersonCodec.FOOTER_SIZE - Integer.BYTES) == PersonCodec.MAGIC)
+                PersonKey.reserve(footer.getLong(0));
+        }
+    }
+
+    /**
+     * Read a snapshot file written through Java serialization, either as a
+     * single serialized map or as a record count followed by the records
+     *
+     * @param in      - Source of the file's contents
+     * @param records - Records keyed by their keys, filled in place
+     *
+     * @return void
+     *
+     * @throws IOException            - If the file cannot be read
+     * @throws ClassNotFoundException - If a class of the file is unknown
+     */
+    @SuppressWarnings("unchecked")
+    private static void migrateSnapshot(final InputStream in,
+                                        final Map<PersonKey, Person> records)
+        throws IOException, ClassNotFoundException
+    {
+        final ObjectInputStream ois = new ObjectInputStream(in);
+        final Object header = ois.readObject();
+
+        // Files written before snapshots hold a single serialized map
+        if (header instanceof TreeMap)
+        {
+            for (Person person : ((TreeMap<String, Person>)header).values())
+                records.put(person.getKey(), person);
+
+            return;
+        }
+
+        final int count = (Integer)header;
+
+        for (int i = 0; i < count; ++i)
+        {
+            final Person person = (Person)ois.readObject();
+
+            records.put(person.getKey(), person);
+        }
+    }
+
+    /**
+     * Rewrite the snapshot from a version of the directory and delete the
+     * segments it covers
+     *
+     * Segments are deleted only once the new snapshot is in place, and
+     * applying a covered segment again on restore merely repeats changes the
+     * snapshot already holds, so an interruption loses nothing.
+     *
+     * @param snapshot - Version of the directory holding every covered change
+     * @param through  - Sequence number of the last segment covered
+     *
+     * @return void
+     *
+     * @throws IOException - If a file cannot be written
+     */
+    private static synchronized void compact(final Snapshot snapshot, final long through)
+        throws IOException
+    {
+        writeSnapshot(snapshot);
+
+        segmentBytes = 0;
+
+        for (Path segment : segments())
+        {
+            if (sequenceOf(segment) <= through)
+                Files.delete(segment);
+            else
+                segmentBytes += Files.size(segment);
+        }
+    }
+
+    /**
+     * Determine whether the segments make up enough of the saved bytes to be
+     * worth merging into the snapshot, each segment entry superseding an
+     * older copy of its record or adding a record the snapshot lacks
+     *
+     * @return boolean - true if a compaction is due, false otherwise
+     *
+     * @throws IOException - If the snapshot's size cannot be read
+     */
+    private static boolean compactionDue() throws IOException
+    {
+        final long snapshotSize = Files.exists(SNAPSHOT) ? Files.size(SNAPSHOT) : 0;
+
+        return segmentBytes > COMPACTION_MINIMUM
+            && segmentBytes > GARBAGE_RATIO * (snapshotSize + segmentBytes);
+    }
+
+    /**
+     * Write the latest state of a set of keys to a new segment, a record or,
+     * for a key no longer present, a removal
+     *
+     * @param changed  - Keys whose records changed since the previous segment
+     * @param snapshot - Version of the directory holding every change
+     *
+     * @return void
+     *
+     * @throws IOException - If the segment cannot be written
+     */
+    private static void writeSegment(final Set<PersonKey> changed, final Snapshot snapshot)
+        throws IOException
+    {
+        final Path segment = Paths.get(String.format(SEGMENT_FORMAT, segmentSequence + 1));
+        final Path pending = Paths.get(segment + ".tmp");
+
+        try (FileOutputStream fos = new FileOutputStream(pending.toFile());
+             BufferedOutputStream bos = new BufferedOutputStream(fos, BUFFER_SIZE);
+             DataOutputStream dos = new DataOutputStream(bos);
+            )
+        {
+            PersonCodec.writeHeader(dos, changed.size());
+
+            for (PersonKey key : changed)
+            {
+                final Person person = snapshot.retrievePerson(key);
+
+                if (person != null)
+                    PersonCodec.write(dos, person);
+                else
+                    PersonCodec.writeRemoval(dos, key);
+            }
+
+            dos.flush();
+            fos.getFD().sync();
+        }
+
+        Files.move(pending, segment, StandardCopyOption.ATOMIC_MOVE);
+
+        ++segmentSequence;
+        segmentBytes += Files.size(segment);
+    }
+
+    /**
+     * Apply the entries of a segment in order
+     *
+     * @param segment - Location of the segment
+     * @param put     - Receiver of every record stored
+     * @param remove  - Receiver of the key of every record removed
+     *
+     * @return int - Number of entries applied
+     *
+     * @throws IOException - If the segment cannot be read
+     */
+    private static int readSegment(final Path segment, final Consumer<? super Person> put,
+                                   final Consumer<? super PersonKey> remove)
+        throws IOException
+    {
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(
+                                       new FileInputStream(segment.toFile()), BUFFER_SIZE)))
+        {
+            if (dis.readInt() != PersonCodec.MAGIC)
+                throw new IOException("Segment is corrupt: " + segment);
+
+            final int count = PersonCodec.readHeader(dis);
+
+            for (int i = 0; i < count; ++i)
+                PersonCodec.readEntry(dis, put, remove);
+
+            return count;
+        }
+    }
+
+    /**
+     * Read the number of entries of a segment from its header
+     *
+     * @param segment - Location of the segment
+     *
+     * @return int - Number of entries
+     *
+     * @throws IOException - If the segment cannot be read
+     */
+    private static int countOf(final Path segment) throws IOException
+    {
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(
+                                       new FileInputStream(segment.toFile()), 0x20)))
+        {
+            if (dis.readInt() != PersonCodec.MAGIC)
+                throw new IOException("Segment is corrupt: " + segment);
+
+            return PersonCodec.readHeader(dis);
+        }
+    }
+
+    /**
+     * List the segments on disk in the order they were written
+     *
+     * @return List<Path> - Locations of the segments
+     *
+     * @throws IOException - If the directory cannot be listed
+     */
+    private static List<Path> segments() throws IOException
+    {
+        final List<Path> segments = new ArrayList<>();
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(
+                 SNAPSHOT.toAbsolutePath().getParent(), SEGMENT_PATTERN))
+        {
+            for (Path file : files)
+                segments.add(file);
+        }
+
+        segments.sort(Comparator.comparingLong(Database::sequenceOf));
+
+        return segments;
+    }
+
+    private static long sequenceOf(final Path segment)
+    {
+        final String name = segment.getFileName().toString();
+
+        return Long.parseLong(name.substring(name.indexOf('.') + 1, name.lastIndexOf('.')));
+    }
+
+    /**
+     * Write the records straight from a snapshot of the directory, which is
+     * taken in constant time and never copied, as a header followed by the
+     * compressed blocks of every member type in key order and the B+tree
+     * indexing each type's blocks
+     *
+     * The file is written aside, forced to disk and then moved over the
+     * previous snapshot in one step, so a crash leaves either snapshot intact
+     * and a mapping of the previous snapshot stays valid.
+     *
+     * @param snapshot - Version of the directory to write
+     *
+     * @return void
+     *
+     * @throws IOException - If the file cannot be written
+     */
+    private static void writeSnapshot(final Snapshot snapshot) throws IOException
+    {
+        final List<List<PersonCodec.Block>> blocks = new ArrayList<>();
+        final ByteArrayOutputStream pending = new ByteArrayOutputStream(
+                                                  PersonCodec.BLOCK_SIZE + 0x1000);
+        final DataOutputStream records = new DataOutputStream(pending);
+        final Deflater deflater = new Deflater();
+        int[] positions = new int[0x400];
+        long serial = 0;
+
+        try (FileOutputStream fos = new FileOutputStream(PENDING.toFile());
+             BufferedOutputStream bos = new BufferedOutputStream(fos, BUFFER_SIZE);
+             DataOutputStream dos = new DataOutputStream(bos);
+            )
+        {
+            PersonCodec.writeHeader(dos, snapshot.size());
+
+            for (MemberTypes type : MemberTypes.values())
+            {
+                final List<PersonCodec.Block> index = new ArrayList<>();
+                final Iterator<Person> members = snapshot.getMembers(type).iterator();
+                PersonKey firstKey = null;
+                int count = 0;
+
+                blocks.add(index);
+
+                while (members.hasNext())
+                {
+                    final Person person = members.next();
+
+                    if (count == 0)
+                        firstKey = person.getKey();
+
+                    if (count == positions.length)
+                        positions = Arrays.copyOf(positions, count * 2);
+
+                    positions[count++] = pending.size();
+                    serial = Math.max(serial, person.getKey().getSerial());
+                    PersonCodec.write(records, person);
+
+                    // A block is closed once it holds enough bytes or its type ends
+                    if (pending.size() >= PersonCodec.BLOCK_SIZE || !members.hasNext())
+                    {
+                        if (dos.size() == Integer.MAX_VALUE)
+                            throw new IOException("Database too large for its block index");
+
+                        index.add(new PersonCodec.Block(dos.size(), count, firstKey));
+                        PersonCodec.writeBlock(dos, deflater, pending, positions, count);
+
+                        pending.reset();
+                        count = 0;
+                    }
+                }
+            }
+
+            // The index pages follow all blocks, so streaming readers never meet them
+            final List<PersonCodec.Block> roots = new ArrayList<>(blocks.size());
+
+            for (List<PersonCodec.Block> index : blocks)
+                roots.add(PersonCodec.writeIndex(dos, index));
+
+            if (dos.size() == Integer.MAX_VALUE)
+                throw new IOException("Database too large for its block index");
+
+            PersonCodec.writeTrailer(dos, roots, serial, dos.size());
+
+            dos.flush();
+            fos.getFD().sync();
+        }
+        finally
+        {
+            deflater.end();
+        }
+
+        Files.move(PENDING, SNAPSHOT, StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Tally of the records restored so far, reported to a listener every few
+     * records and once restoring is done
+     */
+    private static final class Progress
+    {
+        private final BiConsumer<Integer, Integer> listener;
+        private int loaded;
+        private int expected;
+
+        Progress(final BiConsumer<Integer, Integer> listener)
+        {
+            this.listener = listener;
+        }
+
+        void expect(final int count)
+        {
+            expected += count;
+        }
+
+        void advance(final int count)
+        {
+            final int before = loaded;
+
+            loaded += count;
+
+            if (loaded / REPORT_INTERVAL != before / REPORT_INTERVAL)
+                listener.accept(loaded, Math.max(loaded, expected));
+        }
+
+        void finish()
+        {
+            listener.accept(loaded, loaded);
+        }
+    }
+
     /**
      * Stream an error message upon i/o error and terminate the application
      *
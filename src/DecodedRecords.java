@@ -0,0 +1,117 @@
+/*
+ * Copyright 2014-2015 Rico Antonio Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * @author Rico Antonio Felix <ricoantoniofelix@yahoo.com>
+ */
+
+package com.rico.felix.data;
+
+/*
+ * Platform Dependencies
+ */
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+/*
+ * Platform Dependencies
+ */
+import java.util.AbstractMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/*
+ * Local Dependencies
+ */
+import com.rico.felix.models.Person;
+import com.rico.felix.models.PersonKey;
+
+/**
+ * This class is used to hand out one record object per saved record for as
+ * long as anybody holds on to it, a saved store decoding the record afresh
+ * only once the previous object has been collected.
+ */
+final class DecodedRecords
+{
+    // Records decoded so far keyed by their location within the store,
+    // cleared once unreachable
+    private final ConcurrentMap<Long, Decoded> decoded = new ConcurrentHashMap<>();
+    private final ReferenceQueue<Person> released = new ReferenceQueue<>();
+
+    /**
+     * Hand out the record decoded at a location before if it is still
+     * reachable, or decode it, along with the key it was saved under
+     *
+     * @param location - Location of the record within the store
+     * @param decoder  - Decodes the record
+     *
+     * @return Map.Entry<PersonKey, Person> - The record paired with its saved key
+     */
+    Map.Entry<PersonKey, Person> entryAt(final long location, final Supplier<Person> decoder)
+    {
+        for (Object stale; (stale = released.poll()) != null;)
+            decoded.remove(((Decoded) stale).location, stale);
+
+        final Long boxed = location;
+        final Decoded cached = decoded.get(boxed);
+        final Person known = (cached != null) ? cached.get() : null;
+
+        if (known != null)
+            return new AbstractMap.SimpleImmutableEntry<>(cached.key, known);
+
+        final Person person = decoder.get();
+        final Decoded fresh = new Decoded(boxed, person, released);
+
+        // A concurrent reader may have won the race, its record then prevails
+        for (;;)
+        {
+            final Decoded current = decoded.putIfAbsent(boxed, fresh);
+
+            if (current == null)
+                return new AbstractMap.SimpleImmutableEntry<>(fresh.key, person);
+
+            final Person winner = current.get();
+
+            if (winner != null)
+                return new AbstractMap.SimpleImmutableEntry<>(current.key, winner);
+
+            if (decoded.replace(boxed, current, fresh))
+                return new AbstractMap.SimpleImmutableEntry<>(fresh.key, person);
+        }
+    }
+
+    /**
+     * Weak reference to a decoded record remembering where it was decoded
+     * from, so its mapping can be dropped once the record is collected, and
+     * the record's key
+     */
+    private static final class Decoded extends WeakReference<Person>
+    {
+        private final Long location;
+        private final PersonKey key;
+
+        Decoded(final Long location, final Person person,
+                final ReferenceQueue<Person> queue)
+        {
+            super(person, queue);
+            this.location = location;
+            this.key      = person.getKey();
+        }
+    }
+
+}
@@ -27,6 +27,14 @@ import java.awt.BorderLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 
+/*
+ * Platform Dependencies
+ */
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
 /*
  * Platform Dependencies
  */
@@ -39,6 +47,7 @@ import javax.swing.JPanel;
 import javax.swing.JRadioButton;
 import javax.swing.JTextField;
 import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
 
 /*
  * Local Dependencies
@@ -118,6 +127,14 @@ final class Dialogs
     private static StringBuilder office          = new StringBuilder("");
     private static boolean tenured;
 
+    // Thread applying the dialogs' updates in the order submitted, so that
+    // waiting for an update to reach the disk never holds up the interface
+    private static final ExecutorService updater = Executors.newSingleThreadExecutor(task -> {
+        final Thread thread = new Thread(task, "Directory Updater");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     /*
      * Statically configure dialog box's layout and bind action listeners
      * to the response buttons
@@ -573,11 +590,13 @@ final class Dialogs
             && !lastNameInput.equals("")
             && !emailInput.equals(""))
         {
-            Directory.addPerson(
-                new Student(firstNameInput, lastNameInput, emailInput,
-                            classTypeStatus.toString()));
+            final Student student = new Student(firstNameInput, lastNameInput, emailInput,
+                                                classTypeStatus.toString());
 
-            announceSuccessFeedback();
+            update(() -> {
+                Directory.addPerson(student);
+                return true;
+            }, () -> announceSuccessFeedback(firstNameInput + " " + lastNameInput));
         }
         else
         {
@@ -601,11 +620,13 @@ final class Dialogs
             && !emailInput.equals("")
             && !officeInput.equals(""))
         {
-            Directory.addPerson(
-                new Staff(title.toString(), firstNameInput, lastNameInput,
-                          emailInput, officeInput));
+            final Staff staff = new Staff(title.toString(), firstNameInput, lastNameInput,
+                                          emailInput, officeInput);
 
-            announceSuccessFeedback();
+            update(() -> {
+                Directory.addPerson(staff);
+                return true;
+            }, () -> announceSuccessFeedback(firstNameInput + " " + lastNameInput));
         }
         else
         {
@@ -629,10 +650,13 @@ final class Dialogs
             && !emailInput.equals("")
             && !officeInput.equals(""))
         {
-            Directory.addPerson(new Faculty(firstNameInput, lastNameInput,
-                                emailInput, tenured, officeInput));
+            final Faculty faculty = new Faculty(firstNameInput, lastNameInput,
+                                                emailInput, tenured, officeInput);
 
-            announceSuccessFeedback();
+            update(() -> {
+                Directory.addPerson(faculty);
+                return true;
+            }, () -> announceSuccessFeedback(firstNameInput + " " + lastNameInput));
         }
         else
         {
@@ -652,65 +676,92 @@ final class Dialogs
         if (!firstNameInput.equals("")
             && !lastNameInput.equals(""))
         {
-            if (Directory.removePerson(lastNameInput + " " + firstNameInput)
-                != null)
-            {
-                announceRemoveFeedback();
-            }
-            else
-            {
-                announceFailureFeedback();
-            }
+            update(() -> Directory.removePerson(lastNameInput + " " + firstNameInput) != null,
+                   () -> announceRemoveFeedback(firstNameInput + " " + lastNameInput));
         }
     }
 
+    /**
+     * Method used to apply an update to the database on the updater thread
+     * and announce its outcome once it is recorded
+     *
+     * @param update   - Update to apply, returning whether it took effect
+     * @param feedback - Announces the update having taken effect
+     */
+    private static void update(final Supplier<Boolean> update, final Runnable feedback)
+    {
+        CompletableFuture.supplyAsync(update, updater).whenComplete((done, failure) ->
+            SwingUtilities.invokeLater(() -> {
+                if (failure != null)
+                    announceErrorFeedback(View.rootCause(failure).getMessage());
+                else if (done)
+                    feedback.run();
+                else
+                    announceFailureFeedback();
+            }));
+    }
+
     /**
      * Method used to perform the operation associated with find member
      * dialog box's submit button
+     *
+     * A last name alone lists every member whose last name starts with it,
+     * and a first name which does not match exactly lists every member with
+     * the last name whose first name starts with it. Should nothing match,
+     * the members whose fields most resemble the last name are listed.
      */
     private static void findMemberDialogBoxSubmitButtonAction()
     {
         final String firstNameInput = firstName.toString();
         final String lastNameInput  = lastName.toString();
 
-        if (!firstNameInput.equals("")
-            && !lastNameInput.equals(""))
+        if (!lastNameInput.equals(""))
         {
-            Person wantedPerson = Directory.retrievePerson(lastNameInput
-                                                + " " + firstNameInput);
+            final JTextArea viewDisplay = View.getDisplay();
+
+            Person wantedPerson = firstNameInput.equals("") ? null
+                : Directory.retrievePerson(lastNameInput + " " + firstNameInput);
+
             if (wantedPerson != null)
             {
-                final JTextArea viewDisplay = View.getDisplay();
-                
                 viewDisplay.setEditable(true);
                 viewDisplay.replaceRange(firstNameInput + " " + lastNameInput
                                       + " Information:\n\n" + wantedPerson, 0,
                                       viewDisplay.getText().length());
                 viewDisplay.setEditable(false);
+                return;
             }
-            else
-            {
-                final JTextArea viewDisplay = View.getDisplay();
 
-                viewDisplay.setEditable(true);
-                viewDisplay.replaceRange(firstNameInput + " " + lastNameInput
-                                         + " cannot be found ", 0,
-                                         viewDisplay.getText().length());
-                viewDisplay.setEditable(false);
-            }
+            final String prefix = firstNameInput.equals("") ? lastNameInput
+                                : (lastNameInput + " " + firstNameInput);
+
+            // Matches are listed a page at a time like any directory listing,
+            // falling back to last names resembling a possibly misspelled input
+            if (View.showListing("Members matching " + prefix,
+                    (key, size) -> Directory.getMembersWithPrefix(prefix, key, size))
+                || View.showListing("Closest matches for " + lastNameInput,
+                    (key, size) -> Directory.findMembersSimilarTo(lastNameInput, key, size)))
+                return;
+
+            viewDisplay.setEditable(true);
+            viewDisplay.replaceRange((firstNameInput + " " + lastNameInput).trim()
+                                     + " cannot be found ", 0,
+                                     viewDisplay.getText().length());
+            viewDisplay.setEditable(false);
         }
     }
 
     /**
      * Method used to announce a feedback message if an operation was successful
+     *
+     * @param name - Name of the member added
      */
-    private static void announceSuccessFeedback()
+    private static void announceSuccessFeedback(final String name)
     {
         final JTextArea viewDisplay = View.getDisplay();
 
         viewDisplay.setEditable(true);
-        viewDisplay.replaceRange(firstName.toString() + " " + lastName.toString()
-                                 + " was added successfully", 0,
+        viewDisplay.replaceRange(name + " was added successfully", 0,
                                  viewDisplay.getText().length());
         viewDisplay.setEditable(false);
     }
@@ -728,16 +779,33 @@ final class Dialogs
         viewDisplay.setEditable(false);
     }
 
+    /**
+     * Method used to announce a feedback message if an operation could not be
+     * recorded
+     *
+     * @param reason - Description of the error met
+     */
+    private static void announceErrorFeedback(final String reason)
+    {
+        final JTextArea viewDisplay = View.getDisplay();
+
+        viewDisplay.setEditable(true);
+        viewDisplay.replaceRange("Update could not be recorded: " + reason, 0,
+                                 viewDisplay.getText().length());
+        viewDisplay.setEditable(false);
+    }
+
     /**
      * Method used to announce a feedback message if a remove operation was successful
+     *
+     * @param name - Name of the member removed
      */
-    private static void announceRemoveFeedback()
+    private static void announceRemoveFeedback(final String name)
     {
         final JTextArea viewDisplay = View.getDisplay();
 
         viewDisplay.setEditable(true);
-        viewDisplay.replaceRange(firstName.toString() + " " + lastName.toString()
-                                 + " was removed successfully", 0,
+        viewDisplay.replaceRange(name + " was removed successfully", 0,
                                  viewDisplay.getText().length());
         viewDisplay.setEditable(false);
     }
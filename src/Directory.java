@@ -20,45 +20,126 @@
 
 package com.rico.felix.data;
 
+/*
+ * Platform Dependencies
+ */
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
 /*
  * Platform Dependencies
  */
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
 
 /*
- * Platform Dependency
+ * Platform Dependencies
  */
-import java.util.stream.Stream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 
 /*
  * Platform Dependency
  */
-import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /*
- * Platform Dependency
+ * Platform Dependencies
  */
-import java.util.stream.Collectors;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
 
 /*
  * Local Dependencies
  */
 import com.rico.felix.models.Person;
+import com.rico.felix.models.PersonKey;
 import com.rico.felix.models.Student;
+import com.rico.felix.models.Staff;
+import com.rico.felix.models.Faculty;
+
+/*
+ * Local Dependency
+ */
+import com.rico.felix.auxiliary.MemberTypes;
 
 /**
  * This class is used as an in-memory database for managing the application's
  * data.
+ *
+ * The database is safe for use by many threads. Every update publishes a new
+ * immutable Snapshot of the records, so reads never block and any version
+ * can be retained at no cost, while writers serialize only against other
+ * writers of the same key through a set of lock stripes.
+ *
+ * Every change is appended to the write-ahead log before it is published,
+ * and waits for the log to reach the disk only once its lock stripe is
+ * released, so a slow force never holds up writers of other keys.
  */
 public class Directory
 {
     /**
-     * Object used for managing the application's data
+     * Object used for managing the application's data, the current version
+     * of the records partitioned by member type
+     */
+    private static final AtomicReference<Snapshot> filingSystem =
+        new AtomicReference<>(Snapshot.EMPTY);
+
+    // Secondary indexes kept current by the methods mutating the filing system,
+    // the e-mail index keyed by the hash of the address so that it holds no
+    // copy of the addresses the records pack, mapping to the record or to an
+    // array of the records whose addresses share the hash
+    private static final ConcurrentMap<Integer, Object> emailIndex =
+        new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Set<Person>> officeIndex =
+        new ConcurrentHashMap<>();
+    private static final TrigramIndex textIndex = new TrigramIndex();
+    private static final BitmapIndex bitmapIndex = new BitmapIndex();
+
+    // Keys stored or removed since the last save, so that a save writes only
+    // the records which changed
+    private static final Set<PersonKey> dirty = ConcurrentHashMap.newKeySet();
+
+    // Whether the records of a saved store are registered with the
+    // secondary indexes, which happens on the first lookup needing them
+    private static volatile boolean indexed = true;
+
+    // Number of records from which predicate scans run on the fork/join pool
+    private static final int PARALLEL_THRESHOLD = 0x4000;
+
+    // Records in the database per record of a batch below which the batch is
+    // merged into the partitions rather than stored one record at a time
+    private static final int POINT_UPDATE_RATIO = 0x20;
+
+    // Log recording every mutation once the saved records have been restored
+    private static volatile WriteAheadLog log;
+
+    // Locks serializing writers of the same key, the count must be a power of two
+    private static final ReentrantLock[] stripes = new ReentrantLock[0x40];
+
+    /*
+     * Statically allocate the writers' locks
      */
-    private static Map<String, Person> filingSystem = new TreeMap<>();
+    static
+    {
+        for (int i = 0; i < stripes.length; ++i)
+            stripes[i] = new ReentrantLock();
+    }
 
     /*
      * Prevent object instantiation
@@ -76,85 +157,1800 @@ public class Directory
     public static void addPerson(final Person person)
     {
         if (person != null)
-            filingSystem.put(person.getKey(), person);
+        {
+            final ReentrantLock lock = stripeOf(person.getKey());
+            final long position;
+
+            lock.lock();
+            try
+            {
+                position = logPut(Collections.singletonList(person));
+                store(person);
+            }
+            finally
+            {
+                lock.unlock();
+            }
+
+            awaitLog(position);
+        }
+    }
+
+    /**
+     * Add a record to the database unless a record with the same key exists
+     *
+     * @param person - Record consisting of information pertaining to a person
+     *
+     * @return Person - The record already associated with the key, or null if
+     *                  the given record was added
+     */
+    public static Person addPersonIfAbsent(final Person person)
+    {
+        if (person == null)
+            return null;
+
+        final PersonKey key = person.getKey();
+        final ReentrantLock lock = stripeOf(key);
+
+        final Person existing;
+        long position = 0;
+
+        lock.lock();
+        try
+        {
+            existing = retrievePerson(key);
+
+            if (existing == null)
+            {
+                position = logPut(Collections.singletonList(person));
+                store(person, null);
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+
+        awaitLog(position);
+
+        return existing;
+    }
+
+    /**
+     * Replace a record within the database only if a record with the same key
+     * exists
+     *
+     * @param person - Record consisting of information pertaining to a person
+     *
+     * @return Person - The replaced record, or null if no record was replaced
+     */
+    public static Person replacePerson(final Person person)
+    {
+        if (person == null)
+            return null;
+
+        final PersonKey key = person.getKey();
+        final ReentrantLock lock = stripeOf(key);
+
+        final Person previous;
+        final long position;
+
+        lock.lock();
+        try
+        {
+            previous = retrievePerson(key);
+
+            if (previous == null)
+                return null;
+
+            position = logPut(Collections.singletonList(person));
+            store(person, previous);
+        }
+        finally
+        {
+            lock.unlock();
+        }
+
+        awaitLog(position);
+
+        return previous;
+    }
+
+    /**
+     * Add many records to the database at once
+     *
+     * @param people - Records consisting of information pertaining to people
+     *
+     * @return BulkLoadResult - Number of records added and the records refused
+     */
+    public static BulkLoadResult addAll(final Collection<? extends Person> people)
+    {
+        return addAll(people.stream());
+    }
+
+    /**
+     * Add many records to the database at once
+     *
+     * The records are validated in parallel, sorted once and merged with the
+     * existing records into freshly built partitions in a single bottom-up
+     * pass, rather than inserted one at a time. Should a record appear
+     * several times the last occurrence wins, as with repeated calls to
+     * addPerson.
+     *
+     * @param people - Records consisting of information pertaining to people
+     *
+     * @return BulkLoadResult - Number of records added and the records refused
+     */
+    public static BulkLoadResult addAll(final Stream<? extends Person> people)
+    {
+        final List<Person> candidates = people.collect(Collectors.toList());
+
+        final String[] problems = candidates.parallelStream()
+                                            .map(Directory::validate)
+                                            .toArray(String[]::new);
+
+        final List<Person> accepted = new ArrayList<>(candidates.size());
+        final List<BulkLoadResult.Rejection> rejected = new ArrayList<>();
+
+        for (int i = 0; i < problems.length; ++i)
+        {
+            if (problems[i] == null)
+                accepted.add(candidates.get(i));
+            else
+                rejected.add(new BulkLoadResult.Rejection(i, candidates.get(i),
+                                                          problems[i]));
+        }
+
+        final long position;
+
+        for (ReentrantLock lock : stripes)
+            lock.lock();
+        try
+        {
+            position = logPut(accepted);
+            storeAll(accepted);
+
+            for (Person person : accepted)
+                dirty.add(person.getKey());
+        }
+        finally
+        {
+            for (ReentrantLock lock : stripes)
+                lock.unlock();
+        }
+
+        // Writers carry on while the batch is forced to disk
+        awaitLog(position);
+
+        return new BulkLoadResult(accepted.size(), rejected);
     }
 
     /**
      * Delete a record from the database
      *
-     * @param key - Identifier which equates to the Person's name
+     * @param key - Identifier of the Person
+     *
+     * @return Person - Person object if located within database or null
+     */
+    public static Person removePerson(final PersonKey key)
+    {
+        final ReentrantLock lock = stripeOf(key);
+        final Person person;
+        final long position;
+
+        lock.lock();
+        try
+        {
+            person = retrievePerson(key);
+
+            if (person == null)
+                return null;
+
+            position = logRemove(person);
+            withdraw(person);
+            unindex(person);
+        }
+        finally
+        {
+            lock.unlock();
+        }
+
+        awaitLog(position);
+
+        return person;
+    }
+
+    /**
+     * Delete the first record in key order with a name from the database
+     *
+     * @param name - Identifier which equates to the Person's name
      *
      * @return Person - Person object if located within database or null
      */
-    public static Person removePerson(final String key)
+    public static Person removePerson(final String name)
+    {
+        Person person;
+
+        // A concurrent writer may withdraw the record first, leaving the
+        // next record of the same name, if any, to be removed instead
+        do
+        {
+            person = retrievePerson(name);
+
+            if (person == null)
+                return null;
+        }
+        while (removePerson(person.getKey()) == null);
+
+        return person;
+    }
+
+    /**
+     * Replace a record with an edited copy, moving it to the key matching the
+     * copy's name should the name differ
+     *
+     * Records are never changed in place, as every retained version of the
+     * database shares them. The copy is built with the record's serial, and
+     * is logged, marked for the next save and registered with the secondary
+     * indexes in place of the record.
+     *
+     * @param key    - Identifier of the Person
+     * @param edited - Edited copy of the Person bearing the Person's serial
+     *
+     * @return Person - The replaced Person object if located within database or null
+     *
+     * @throws IllegalArgumentException - If the copy bears another serial
+     */
+    public static Person updatePerson(final PersonKey key, final Person edited)
+    {
+        if (edited.getKey().getSerial() != key.getSerial())
+            throw new IllegalArgumentException("Edited copy must keep the serial "
+                                               + key.getSerial());
+
+        final ReentrantLock lock = stripeOf(key);
+        final Person person;
+        final long position;
+
+        lock.lock();
+        try
+        {
+            person = retrievePerson(key);
+
+            if (person == null)
+                return null;
+
+            position = replace(key, person, edited);
+        }
+        finally
+        {
+            lock.unlock();
+        }
+
+        awaitLog(position);
+
+        return person;
+    }
+
+    /**
+     * Give a record a new name, moving it to the key matching the name
+     *
+     * @param key       - Identifier of the Person
+     * @param firstName - New first name of the Person
+     * @param lastName  - New last name of the Person
+     *
+     * @return Person - The renamed copy of the Person object if located within
+     *                  database or null
+     */
+    public static Person renamePerson(final PersonKey key, final String firstName,
+                                      final String lastName)
     {
-        return filingSystem.remove(key);
+        final ReentrantLock lock = stripeOf(key);
+        final Person renamed;
+        final long position;
+
+        lock.lock();
+        try
+        {
+            final Person person = retrievePerson(key);
+
+            if (person == null)
+                return null;
+
+            renamed  = withName(person, firstName, lastName);
+            position = replace(key, person, renamed);
+        }
+        finally
+        {
+            lock.unlock();
+        }
+
+        awaitLog(position);
+
+        return renamed;
     }
 
     /**
      * Retrieve a record from the database
      *
-     * @param key - Identifier which equates to the Person's name
+     * @param key - Identifier of the Person
      *
      * @return Person - Person object if located within database or null
      */
-    public static Person retrievePerson(final String key)
+    public static Person retrievePerson(final PersonKey key)
     {
-        return filingSystem.get(key);
+        return filingSystem.get().retrievePerson(key);
     }
 
     /**
-     * Retrieve a specified sequence of records from the database
+     * Retrieve the first record in key order with a name from the database
      *
-     * @param filter - Object used to filter the records for a specific member type
+     * @param name - Identifier which equates to the Person's name
      *
-     * @return Stream<Person> - A specified sequence of records from the database if located
+     * @return Person - Person object if located within database or null
+     */
+    public static Person retrievePerson(final String name)
+    {
+        return filingSystem.get().retrievePerson(name);
+    }
+
+    /**
+     * Retrieve a record from the database by e-mail address
+     *
+     * @param email - E-mail address associated with the Person
+     *
+     * @return Person - Person object if located within database or null
+     */
+    public static Person retrievePersonByEmail(final String email)
+    {
+        ensureIndexed();
+
+        for (Person candidate : withEmailHash(emailIndex.get(email.hashCode())))
+            if (email.equals(candidate.getEmail()))
+                return candidate;
+
+        return null;
+    }
+
+    /**
+     * Retrieve the staff and faculty members associated with an office
+     *
+     * @param office - Name of the office
+     *
+     * @return Stream<Person> - The members associated with the office if located
      *                          or null
      */
-    public static Stream<Person> getMemberInformation(Predicate<Person> filter)
+    public static Stream<Person> getMembersByOffice(final String office)
+    {
+        ensureIndexed();
+
+        final Set<Person> members = officeIndex.get(office);
+
+        if (members != null)
+            return members.stream();
+
+        return null;
+    }
+
+    /**
+     * Retrieve the records whose name, e-mail address or office contains a
+     * piece of text, ignoring case
+     *
+     * @param text - Text to search for, such as "smi"
+     *
+     * @return Stream<Person> - The matching records in key order if located or null
+     */
+    public static Stream<Person> findMembersContaining(final String text)
     {
-        if (!filingSystem.isEmpty())
+        ensureIndexed();
+
+        final List<Person> matches = textIndex.containing(text);
+
+        if (!matches.isEmpty())
+            return matches.stream().sorted(Comparator.comparing(Person::getKey));
+
+        return null;
+    }
+
+    /**
+     * Retrieve the records whose name, e-mail address or office resembles a
+     * piece of text, tolerating typing errors
+     *
+     * @param text - Text to search for, such as "smiht"
+     *
+     * @return Stream<Person> - The matching records, closest first, if located
+     *                          or null
+     */
+    public static Stream<Person> findMembersSimilarTo(final String text)
+    {
+        ensureIndexed();
+
+        final List<Person> matches = textIndex.similarTo(text);
+
+        if (!matches.isEmpty())
+            return matches.stream();
+
+        return null;
+    }
+
+    /**
+     * Retrieve one page of the records whose name, e-mail address or office
+     * resembles a piece of text, closest first
+     *
+     * The ranking is recomputed for every page and resumed after the
+     * continuation key's record, so a listing ends early should that record
+     * stop resembling the text in the meantime.
+     *
+     * @param text            - Text to search for, such as "smiht"
+     * @param continuationKey - Key from the previous page, or null for the first page
+     * @param pageSize        - Maximum number of records on the page
+     *
+     * @return Page - The matching records following the continuation key
+     */
+    public static Page findMembersSimilarTo(final String text,
+                                            final PersonKey continuationKey, final int pageSize)
+    {
+        if (pageSize <= 0)
+            throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+
+        ensureIndexed();
+
+        final List<Person> matches = textIndex.similarTo(text);
+
+        int from = 0;
+
+        if (continuationKey != null)
         {
-            return filingSystem.values()
-                               .stream()
-                               .filter(filter);
+            from = matches.size();
+
+            for (int i = 0; i < matches.size(); ++i)
+                if (matches.get(i).getKey().equals(continuationKey))
+                {
+                    from = i + 1;
+                    break;
+                }
         }
 
-        return null;
+        final int to = from + Math.min(pageSize, matches.size() - from);
+
+        return new Page(new ArrayList<>(matches.subList(from, to)),
+                        (to < matches.size()) ? matches.get(to - 1).getKey() : null);
     }
 
     /**
-     * Retrieve a copy of the database
+     * Retrieve the ids of every record within the bitmap indexes, against
+     * which other bitmaps are negated through andNot
      *
-     * @return TreeMap<String, Person> - A copy of the database
+     * @return Bitmap - Ids of every record
      */
-    public static TreeMap<String, Person> getFilingSystem()
+    public static Bitmap getMemberIds()
     {
-        return new TreeMap<>(filingSystem);
+        ensureIndexed();
+
+        return bitmapIndex.all();
     }
 
     /**
-     * Provide data for the database
+     * Retrieve the ids of the records of a member type within the bitmap
+     * indexes
      *
-     * @param data - A map data structure containing database information
+     * @param type - Member type of the records
      *
-     * @return boolean - true if initialization was successful, false otherwise
+     * @return Bitmap - Ids of the records of the member type
      */
-    public static boolean setFilingSystem(Map<String, Person> data)
+    public static Bitmap getMemberIds(final MemberTypes type)
     {
-        return ((filingSystem = data) != null) ? true : false;
+        ensureIndexed();
+
+        return bitmapIndex.ofType(type);
     }
 
     /**
-     * Initialize the database for the application on startup
+     * Retrieve the ids of the students of a class type within the bitmap
+     * indexes
      *
-     * @return void
+     * @param classType - Class type of the students, such as "Senior"
+     *
+     * @return Bitmap - Ids of the students of the class type
      */
-    public static void loadDirectory()
+    public static Bitmap getStudentIds(final String classType)
+    {
+        ensureIndexed();
+
+        return bitmapIndex.ofClassType(classType);
+    }
+
+    /**
+     * Retrieve the ids of the tenured faculty members within the bitmap
+     * indexes
+     *
+     * @return Bitmap - Ids of the tenured faculty members
+     */
+    public static Bitmap getTenuredFacultyIds()
+    {
+        ensureIndexed();
+
+        return bitmapIndex.tenured();
+    }
+
+    /**
+     * Retrieve the records behind ids of the bitmap indexes, such as those of
+     * getStudentIds("Senior").or(getTenuredFacultyIds()), skipping records
+     * removed since the ids were retrieved
+     *
+     * @param ids - Ids of the records
+     *
+     * @return Stream<Person> - The records in key order if located or null
+     */
+    public static Stream<Person> getMembers(final Bitmap ids)
     {
-        if (!Database.restore())
-            Directory.addPerson(new Student("Rico", "Felix",
-                    "ricoantoniofelix@yahoo.com", "Freshman"));
+        final List<Person> members = bitmapIndex.recordsOf(ids);
+
+        if (!members.isEmpty())
+            return members.stream().sorted(Comparator.comparing(Person::getKey));
+
+        return null;
+    }
+
+    /**
+     * Retrieve the records of a specified member type in key order
+     *
+     * @param type - Member type of the records to retrieve
+     *
+     * @return Stream<Person> - The records of the specified member type if located
+     *                          or null
+     */
+    public static Stream<Person> getMembersByType(final MemberTypes type)
+    {
+        final Snapshot snapshot = filingSystem.get();
+
+        if (!snapshot.partition(type).isEmpty())
+            return snapshot.getMembers(type);
+
+        return null;
+    }
+
+    /**
+     * Retrieve every record from the database in key order
+     *
+     * @return Stream<Person> - All records merged across member types if located
+     *                          or null
+     */
+    public static Stream<Person> getAllMembers()
+    {
+        final Snapshot snapshot = filingSystem.get();
+
+        if (!snapshot.isEmpty())
+            return snapshot.getMembers();
+
+        return null;
+    }
+
+    /**
+     * Retrieve the records whose keys fall within a range in key order
+     *
+     * @param fromKey - Lowest key of the range, inclusive
+     * @param toKey   - Highest key of the range, exclusive
+     *
+     * @return Stream<Person> - The records within the range if located or null
+     */
+    public static Stream<Person> getMembersInRange(final String fromKey,
+                                                   final String toKey)
+    {
+        if (fromKey.compareTo(toKey) >= 0)
+            return null;
+
+        return nonEmpty(filingSystem.get().ranges(PersonKey.lowerBound(fromKey), true,
+                                                  PersonKey.lowerBound(toKey), false));
+    }
+
+    /**
+     * Retrieve the records whose keys start with a prefix in key order, for
+     * instance all members whose last name starts with "Mc"
+     *
+     * @param prefix - Leading characters of the keys to retrieve
+     *
+     * @return Stream<Person> - The records matching the prefix if located or null
+     */
+    public static Stream<Person> getMembersWithPrefix(final String prefix)
+    {
+        final String end = prefixEnd(prefix);
+
+        return nonEmpty(filingSystem.get().ranges(PersonKey.lowerBound(prefix), true,
+            (end != null) ? PersonKey.lowerBound(end) : null, false));
+    }
+
+    /**
+     * Retrieve one page of the records whose keys start with a prefix in key
+     * order
+     *
+     * @param prefix          - Leading characters of the keys to retrieve
+     * @param continuationKey - Key from the previous page, or null for the first page
+     * @param pageSize        - Maximum number of records on the page
+     *
+     * @return Page - The matching records following the continuation key
+     */
+    public static Page getMembersWithPrefix(final String prefix,
+                                            final PersonKey continuationKey, final int pageSize)
+    {
+        final String end = prefixEnd(prefix);
+
+        return page(filingSystem.get().ranges(
+            (continuationKey != null) ? continuationKey : PersonKey.lowerBound(prefix),
+            continuationKey == null,
+            (end != null) ? PersonKey.lowerBound(end) : null, false), pageSize);
+    }
+
+    /**
+     * Retrieve one page of every record in key order
+     *
+     * @param continuationKey - Key from the previous page, or null for the first page
+     * @param pageSize        - Maximum number of records on the page
+     *
+     * @return Page - The records following the continuation key
+     */
+    public static Page getMembersPage(final PersonKey continuationKey, final int pageSize)
+    {
+        return page(filingSystem.get().ranges(continuationKey, false, null, false),
+                    pageSize);
+    }
+
+    /**
+     * Retrieve one page of the records of a specified member type in key order
+     *
+     * @param type            - Member type of the records to retrieve
+     * @param continuationKey - Key from the previous page, or null for the first page
+     * @param pageSize        - Maximum number of records on the page
+     *
+     * @return Page - The records following the continuation key
+     */
+    public static Page getMembersPage(final MemberTypes type,
+                                      final PersonKey continuationKey, final int pageSize)
+    {
+        return page(Collections.singletonList(filingSystem.get().partition(type)
+                        .iterator(continuationKey, false, null, false)), pageSize);
+    }
+
+    /**
+     * Retrieve a specified sequence of records from the database
+     *
+     * Once the database holds PARALLEL_THRESHOLD records the returned stream
+     * is parallel, the records being split into even key ranges across the
+     * fork/join pool. The stream stays ordered, so collecting it or consuming
+     * it with forEachOrdered yields the records in key order.
+     *
+     * @param filter - Object used to filter the records for a specific member type
+     *
+     * @return Stream<Person> - A specified sequence of records from the database if located
+     *                          or null
+     */
+    public static Stream<Person> getMemberInformation(Predicate<Person> filter)
+    {
+        final Snapshot snapshot = filingSystem.get();
+        final int size = snapshot.size();
+
+        if (size != 0)
+            return StreamSupport.stream(snapshot.spliterator(),
+                                        size >= PARALLEL_THRESHOLD).filter(filter);
+
+        return null;
+    }
+
+    /**
+     * Retrieve an immutable version of the database in constant time, the
+     * version is unaffected by any later update
+     *
+     * @return Snapshot - The current version of the database
+     */
+    public static Snapshot snapshot()
+    {
+        return filingSystem.get();
+    }
+
+    /**
+     * Retrieve a copy of the database
+     *
+     * @return TreeMap<PersonKey, Person> - A copy of the database
+     */
+    public static TreeMap<PersonKey, Person> getFilingSystem()
+    {
+        final TreeMap<PersonKey, Person> copy = new TreeMap<>();
+
+        filingSystem.get().getMembers().forEach(
+            person -> copy.put(person.getKey(), person));
+
+        return copy;
+    }
+
+    /**
+     * Provide data for the database
+     *
+     * @param data - A map data structure containing database information
+     *
+     * @return boolean - true if initialization was successful, false otherwise
+     */
+    public static boolean setFilingSystem(Map<String, Person> data)
+    {
+        if (data == null)
+            return false;
+
+        setRecords(data.values());
+
+        return true;
+    }
+
+    /**
+     * Attach the write-ahead log recording every later mutation
+     *
+     * @param journal - Log to append to, or null to stop logging
+     *
+     * @return void
+     */
+    static void setLog(final WriteAheadLog journal)
+    {
+        log = journal;
+    }
+
+    /**
+     * Replace every record of the database without recording the records in
+     * the write-ahead log, which is meant for restoring saved records
+     *
+     * @param records - Records making up the database
+     *
+     * @return void
+     */
+    static void setRecords(final Iterable<? extends Person> records)
+    {
+        for (ReentrantLock lock : stripes)
+            lock.lock();
+        try
+        {
+            filingSystem.set(Snapshot.EMPTY);
+            emailIndex.clear();
+            officeIndex.clear();
+            textIndex.clear();
+            bitmapIndex.clear();
+            indexed = true;
+
+            final List<Person> accepted = new ArrayList<>();
+
+            records.forEach(accepted::add);
+
+            dirty.clear();
+
+            storeAll(accepted);
+        }
+        finally
+        {
+            for (ReentrantLock lock : stripes)
+                lock.unlock();
+        }
+    }
+
+    /**
+     * Replace every record of the database with the records of a saved store,
+     * which are decoded only when read and registered with the secondary
+     * indexes only once a lookup needs them
+     *
+     * @param store - The mapped or columnar store
+     *
+     * @return void
+     */
+    static void setBase(final SavedStore store)
+    {
+        for (ReentrantLock lock : stripes)
+            lock.lock();
+        try
+        {
+            filingSystem.set(Snapshot.of(store));
+            emailIndex.clear();
+            officeIndex.clear();
+            textIndex.clear();
+            bitmapIndex.clear();
+            dirty.clear();
+            indexed = false;
+        }
+        finally
+        {
+            for (ReentrantLock lock : stripes)
+                lock.unlock();
+        }
+    }
+
+    /**
+     * Apply a batch of saved or recovered changes without recording them in
+     * the write-ahead log, which is meant for restoring records while the
+     * directory is already in use; a key changed since the restore began
+     * keeps its newer state
+     *
+     * @param stored  - Records to store
+     * @param removed - Keys of the records to remove
+     * @param unsaved - Whether the changes were never saved, so that they
+     *                  count as changed for the next save
+     *
+     * @return void
+     */
+    static void load(final Collection<? extends Person> stored,
+                     final Collection<PersonKey> removed, final boolean unsaved)
+    {
+        for (ReentrantLock lock : stripes)
+            lock.lock();
+        try
+        {
+            final List<Person> accepted = new ArrayList<>(stored.size());
+
+            for (Person person : stored)
+                if (!dirty.contains(person.getKey()))
+                    accepted.add(person);
+
+            final List<PersonKey> dropped = new ArrayList<>(removed.size());
+            final List<Person> displaced = new ArrayList<>();
+            Snapshot updated = filingSystem.get();
+
+            for (PersonKey key : removed)
+            {
+                if (dirty.contains(key))
+                    continue;
+
+                final Person previous = updated.retrievePerson(key);
+
+                if (previous != null)
+                {
+                    for (MemberTypes type : MemberTypes.values())
+                        updated = updated.with(type, updated.partition(type).remove(key));
+
+                    displaced.add(previous);
+                }
+
+                dropped.add(key);
+            }
+
+            filingSystem.set(updated);
+
+            // The removed records leave the indexes in one sweep, as in storeAll
+            displaced.parallelStream().forEach(Directory::unindexAttributes);
+            textIndex.removeAll(displaced);
+            bitmapIndex.removeAll(displaced);
+
+            storeAll(accepted);
+
+            if (unsaved)
+            {
+                for (Person person : accepted)
+                    dirty.add(person.getKey());
+
+                dirty.addAll(dropped);
+            }
+        }
+        finally
+        {
+            for (ReentrantLock lock : stripes)
+                lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieve the current version of the database provided that no key
+     * changed since the last save
+     *
+     * @return Snapshot - The version holding exactly the saved records, or
+     *                    null if any record changed since
+     */
+    static Snapshot pristine()
+    {
+        for (ReentrantLock lock : stripes)
+            lock.lock();
+        try
+        {
+            return dirty.isEmpty() ? filingSystem.get() : null;
+        }
+        finally
+        {
+            for (ReentrantLock lock : stripes)
+                lock.unlock();
+        }
+    }
+
+    /**
+     * Hold off every writer by taking every lock stripe, until unlockAll is
+     * called, so that nothing is logged, published or marked changed meanwhile
+     *
+     * @return void
+     */
+    static void lockAll()
+    {
+        for (ReentrantLock lock : stripes)
+            lock.lock();
+    }
+
+    /**
+     * Release every lock stripe taken by lockAll
+     *
+     * @return void
+     */
+    static void unlockAll()
+    {
+        for (ReentrantLock lock : stripes)
+            lock.unlock();
+    }
+
+    /**
+     * Collect and forget the keys stored or removed since the last call; with
+     * every writer held off through lockAll the keys are exactly those whose
+     * changes the current version holds beyond the previous call's version
+     *
+     * @return Set<PersonKey> - Keys whose records changed
+     */
+    static Set<PersonKey> drainDirty()
+    {
+        final Set<PersonKey> drained = new HashSet<>();
+
+        for (Iterator<PersonKey> keys = dirty.iterator(); keys.hasNext();)
+        {
+            drained.add(keys.next());
+            keys.remove();
+        }
+
+        return drained;
+    }
+
+    /**
+     * Mark keys drained by drainDirty as changed again, meant for a save
+     * which failed to write their records
+     *
+     * @param keys - Keys whose records remain unsaved
+     *
+     * @return void
+     */
+    static void restoreDirty(final Collection<PersonKey> keys)
+    {
+        dirty.addAll(keys);
+    }
+
+    /**
+     * Initialize the database for the application on startup
+     *
+     * @return void
+     */
+    public static void loadDirectory()
+    {
+        loadDirectory((loaded, expected) -> {}).join();
+    }
+
+    /**
+     * Initialize the database for the application on startup without waiting
+     * for the saved records, which are restored in batches on a background
+     * thread and can be queried and edited as soon as each batch arrives
+     *
+     * @param progress - Receiver of the number of records restored so far and
+     *                   of the number expected, called on the restoring thread
+     *
+     * @return CompletableFuture<Void> - Completed once every saved record is restored
+     */
+    public static CompletableFuture<Void> loadDirectory(
+        final BiConsumer<Integer, Integer> progress)
+    {
+        return Database.restoreAsync(progress).thenAccept(restored -> {
+            if (!restored)
+                addPersonIfEmpty(new Student("Rico", "Felix",
+                        "ricoantoniofelix@yahoo.com", "Freshman"));
+        });
+    }
+
+    /**
+     * Add a record to the database only if it holds no record at all, with
+     * every writer held off so that no record is added meanwhile
+     *
+     * @param person - Record consisting of information pertaining to a person
+     *
+     * @return void
+     */
+    private static void addPersonIfEmpty(final Person person)
+    {
+        final long position;
+
+        lockAll();
+        try
+        {
+            if (!filingSystem.get().isEmpty())
+                return;
+
+            position = logPut(Collections.singletonList(person));
+            store(person, null);
+        }
+        finally
+        {
+            unlockAll();
+        }
+
+        awaitLog(position);
+    }
+
+    /**
+     * Replace a record with an edited copy bearing its serial, logging the
+     * change before publishing it, the caller must hold the lock stripe of
+     * the record's key
+     *
+     * @param key    - Identifier of the record
+     * @param person - The record
+     * @param edited - The edited copy
+     *
+     * @return long - Length of the log up to and including the change, or
+     *                zero if no log is attached
+     */
+    private static long replace(final PersonKey key, final Person person,
+                                final Person edited)
+    {
+        // The copy is logged ahead of the removal, so a failure in between
+        // leaves the log holding both versions rather than neither
+        long position = logPut(Collections.singletonList(edited));
+
+        if (edited.getKey().equals(key))
+        {
+            store(edited, person);
+            return position;
+        }
+
+        position = logRemove(person);
+
+        withdraw(person);
+        unindex(person);
+
+        // The serial keeps the new key unique to this record, so no other
+        // writer contends for it and its stripe need not be taken
+        store(edited, null);
+
+        return position;
+    }
+
+    /**
+     * Store a record in its partition and the secondary indexes, the caller
+     * must hold the lock stripe of the record's key and have logged the record
+     *
+     * @param person - Record to store
+     *
+     * @return Person - The record previously associated with the key or null
+     */
+    private static Person store(final Person person)
+    {
+        final Person previous = retrievePerson(person.getKey());
+
+        store(person, previous);
+
+        return previous;
+    }
+
+    /**
+     * Store a record in place of the one its key is known to be associated
+     * with, the caller must hold the lock stripe of the record's key and have
+     * logged the record
+     *
+     * A key identifies at most one record across all partitions, yet only a
+     * record whose member type changed under its key lies in another
+     * partition, so the other partitions are neither searched nor touched
+     * otherwise. Over a mapped database each of those lookups would cost a
+     * block decompression.
+     *
+     * @param person   - Record to store
+     * @param previous - Record currently associated with the key, or null if
+     *                   none is
+     *
+     * @return void
+     */
+    private static void store(final Person person, final Person previous)
+    {
+        final PersonKey key = person.getKey();
+        final MemberTypes type = memberTypeOf(person);
+        final MemberTypes moved = (previous != null && memberTypeOf(previous) != type)
+                                  ? memberTypeOf(previous) : null;
+
+        Snapshot current;
+        Snapshot updated;
+
+        // Other writers only touch other keys, so a failed exchange merely
+        // rebases this update onto their version
+        do
+        {
+            current = filingSystem.get();
+            updated = current;
+
+            if (moved != null)
+                updated = updated.with(moved, updated.partition(moved).remove(key));
+
+            updated = updated.with(type, updated.partition(type).put(key, person));
+        }
+        while (!filingSystem.compareAndSet(current, updated));
+
+        // Serials handed out later must not meet the stored one
+        PersonKey.reserve(key.getSerial());
+        dirty.add(key);
+
+        if (previous != person)
+        {
+            index(person);
+            unindex(previous);
+        }
+    }
+
+    /**
+     * Merge many records into the partitions and the secondary indexes, the
+     * caller must hold every lock stripe
+     *
+     * @param people - Records to store, later records win over earlier ones
+     *
+     * @return void
+     */
+    private static void storeAll(final List<Person> people)
+    {
+        final Map<PersonKey, Person> claimed = new HashMap<>(people.size() * 2);
+        long serial = 0;
+
+        for (Person person : people)
+        {
+            claimed.put(person.getKey(), person);
+            serial = Math.max(serial, person.getKey().getSerial());
+        }
+
+        // Serials handed out later must not meet any stored one
+        PersonKey.reserve(serial);
+
+        final Snapshot current = filingSystem.get();
+        final List<Person> displaced = new ArrayList<>();
+
+        // A batch small next to the partitions is cheaper to apply one record
+        // at a time than by rebuilding the partitions around it
+        final Snapshot updated = ((long) claimed.size() * POINT_UPDATE_RATIO < current.size())
+                                 ? putEach(current, claimed, displaced)
+                                 : mergeAll(current, claimed, displaced);
+
+        filingSystem.set(updated);
+
+        displaced.parallelStream().forEach(Directory::unindexAttributes);
+        textIndex.removeAll(displaced);
+        bitmapIndex.removeAll(displaced);
+
+        final List<Person> stored = new ArrayList<>(claimed.values());
+
+        stored.parallelStream().forEach(Directory::indexAttributes);
+        textIndex.addAll(stored);
+        bitmapIndex.addAll(stored);
+    }
+
+    /**
+     * Store a batch of records one at a time, the caller must hold every
+     * lock stripe
+     *
+     * @param current   - Version of the database to update
+     * @param claimed   - Records to store by key
+     * @param displaced - Receives the records replaced
+     *
+     * @return Snapshot - The updated version
+     */
+    private static Snapshot putEach(final Snapshot current,
+            final Map<PersonKey, Person> claimed, final List<Person> displaced)
+    {
+        Snapshot updated = current;
+
+        // Neighbouring keys share most of their path through the partitions,
+        // so visiting the batch in key order keeps those paths in cache
+        final Person[] people = claimed.values().toArray(new Person[0]);
+
+        Arrays.sort(people, Comparator.comparing(Person::getKey));
+
+        for (Person person : people)
+        {
+            final PersonKey key = person.getKey();
+            final MemberTypes type = memberTypeOf(person);
+            final Person previous = updated.retrievePerson(key);
+
+            if (previous != null)
+                displaced.add(previous);
+
+            for (MemberTypes other : MemberTypes.values())
+                if (other != type)
+                    updated = updated.with(other, updated.partition(other).remove(key));
+
+            updated = updated.with(type, updated.partition(type).put(key, person));
+        }
+
+        return updated;
+    }
+
+    /**
+     * Store a batch of records by merging each partition with the batch's
+     * records of its member type, the caller must hold every lock stripe
+     *
+     * @param current   - Version of the database to update
+     * @param claimed   - Records to store by key
+     * @param displaced - Receives the records replaced
+     *
+     * @return Snapshot - The updated version
+     */
+    private static Snapshot mergeAll(final Snapshot current,
+            final Map<PersonKey, Person> claimed, final List<Person> displaced)
+    {
+        Snapshot updated = current;
+
+        for (MemberTypes type : MemberTypes.values())
+        {
+            final Partition partition = current.partition(type);
+            final PersistentSortedMap<PersonKey, Person> stored = partition.delta();
+
+            // Incoming records of this type sorted once by key
+            final PersonKey[] incoming = claimed.entrySet().stream()
+                .filter(entry -> memberTypeOf(entry.getValue()) == type)
+                .map(Map.Entry::getKey)
+                .toArray(PersonKey[]::new);
+
+            Arrays.parallelSort(incoming);
+
+            if (incoming.length == 0 && !hasAnyKey(partition, claimed))
+                continue;
+
+            final int capacity = stored.size() + incoming.length;
+            final PersonKey[] keys = new PersonKey[capacity];
+            final Person[] values = new Person[capacity];
+            final Iterator<Map.Entry<PersonKey, Person>> existing = stored.iterator();
+
+            Map.Entry<PersonKey, Person> next = existing.hasNext() ? existing.next() : null;
+            int size = 0;
+            int i = 0;
+
+            while (next != null || i < incoming.length)
+            {
+                final int c = (next == null) ? 1
+                            : (i == incoming.length) ? -1
+                            : next.getKey().compareTo(incoming[i]);
+
+                if (c < 0)
+                {
+                    // Existing records claimed by an incoming record of any type give way
+                    if (claimed.containsKey(next.getKey()))
+                        displaced.add(next.getValue());
+                    else
+                    {
+                        keys[size]   = next.getKey();
+                        values[size] = next.getValue();
+                        ++size;
+                    }
+                }
+                else
+                {
+                    if (c == 0)
+                        displaced.add(next.getValue());
+
+                    keys[size]   = incoming[i];
+                    values[size] = claimed.get(incoming[i]);
+                    ++size;
+                    ++i;
+                }
+
+                if (c <= 0)
+                    next = existing.hasNext() ? existing.next() : null;
+            }
+
+            Partition merged = partition.withDelta(
+                PersistentSortedMap.fromSorted(keys, values, size));
+
+            // Saved records of a base store claimed by any type give way too
+            if (partition.hasBase())
+            {
+                for (PersonKey key : claimed.keySet())
+                {
+                    final Person saved = merged.saved(key);
+
+                    if (saved != null)
+                    {
+                        displaced.add(saved);
+                        merged = merged.withHidden(key);
+                    }
+                }
+            }
+
+            updated = updated.with(type, merged);
+        }
+
+        return updated;
+    }
+
+    /**
+     * Determine whether a partition holds any of the given keys
+     *
+     * @param partition - Partition to inspect
+     * @param keys      - Keys to look for
+     *
+     * @return boolean - true if at least one key is present, false otherwise
+     */
+    private static boolean hasAnyKey(final Partition partition,
+                                     final Map<PersonKey, Person> keys)
+    {
+        if (partition.size() < keys.size())
+        {
+            for (Iterator<Map.Entry<PersonKey, Person>> entries = partition.iterator();
+                 entries.hasNext();)
+                if (keys.containsKey(entries.next().getKey()))
+                    return true;
+        }
+        else
+        {
+            for (PersonKey key : keys.keySet())
+                if (partition.get(key) != null)
+                    return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Copy a record under a new name, keeping its serial and every other field
+     *
+     * @param person    - Record to copy
+     * @param firstName - First name of the copy
+     * @param lastName  - Last name of the copy
+     *
+     * @return Person - The copy
+     */
+    private static Person withName(final Person person, final String firstName,
+                                   final String lastName)
+    {
+        final long serial = person.getKey().getSerial();
+
+        if (person instanceof Staff)
+        {
+            final Staff staff = (Staff) person;
+
+            return new Staff(staff.getTitle(), firstName, lastName, staff.getEmail(),
+                             staff.getOffice(), serial);
+        }
+
+        if (person instanceof Faculty)
+        {
+            final Faculty faculty = (Faculty) person;
+
+            return new Faculty(firstName, lastName, faculty.getEmail(), faculty.isTenured(),
+                               faculty.getOffice(), serial);
+        }
+
+        return new Student(firstName, lastName, person.getEmail(),
+                           ((Student) person).getClassTypeStatus(), serial);
+    }
+
+    /**
+     * Check that a record holds the information required of its member type
+     *
+     * @param person - Record to check
+     *
+     * @return String - Description of the first problem found, or null if valid
+     */
+    private static String validate(final Person person)
+    {
+        if (person == null)
+            return "Missing record";
+
+        if (isBlank(person.getFirstName()))
+            return "Missing first name";
+
+        if (isBlank(person.getLastName()))
+            return "Missing last name";
+
+        if (isBlank(person.getEmail()))
+            return "Missing e-mail address";
+
+        if ((person instanceof Staff || person instanceof Faculty)
+            && isBlank(officeOf(person)))
+            return "Missing office";
+
+        final long serial = person.getKey().getSerial();
+
+        if (serial < 1 || serial > PersonKey.MAX_SERIAL)
+            return "Serial out of range: " + serial;
+
+        return null;
+    }
+
+    private static boolean isBlank(final String value)
+    {
+        return value == null || value.trim().isEmpty();
+    }
+
+    /**
+     * Remove a record from its partition, the caller must hold the lock stripe
+     * of the record's key and have logged the removal
+     *
+     * @param person - The stored record, whose member type names the only
+     *                 partition holding its key
+     *
+     * @return void
+     */
+    private static void withdraw(final Person person)
+    {
+        final PersonKey key = person.getKey();
+        final MemberTypes type = memberTypeOf(person);
+
+        Snapshot current;
+        Snapshot updated;
+
+        do
+        {
+            current = filingSystem.get();
+            updated = current.with(type, current.partition(type).remove(key));
+        }
+        while (!filingSystem.compareAndSet(current, updated));
+
+        dirty.add(key);
+    }
+
+    /**
+     * Append stored records to the write-ahead log if one is attached, which
+     * happens before they are published so that no reader sees a change the
+     * log lacks
+     *
+     * @param people - Records stored
+     *
+     * @return long - Length of the log up to and including the records, or
+     *                zero if no log is attached
+     */
+    private static long logPut(final List<Person> people)
+    {
+        final WriteAheadLog journal = log;
+        long position = 0;
+
+        if (journal != null)
+        {
+            try
+            {
+                for (Person person : people)
+                    position = journal.put(person);
+            }
+            catch (IOException ioe)
+            {
+                throw new UncheckedIOException(ioe);
+            }
+        }
+
+        return position;
+    }
+
+    /**
+     * Append a removed record to the write-ahead log if one is attached, which
+     * happens before the removal is published
+     *
+     * @param person - Record removed
+     *
+     * @return long - Length of the log up to and including the removal, or
+     *                zero if no log is attached
+     */
+    private static long logRemove(final Person person)
+    {
+        final WriteAheadLog journal = log;
+
+        if (journal == null)
+            return 0;
+
+        try
+        {
+            return journal.remove(person);
+        }
+        catch (IOException ioe)
+        {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    /**
+     * Apply the log's sync policy to the changes appended up to a position,
+     * which under the commit policy means waiting until they are on disk; the
+     * caller holds no lock stripe, so other writers carry on meanwhile and
+     * share the force
+     *
+     * @param position - Length of the log up to and including the caller's
+     *                   changes, or zero if nothing was logged
+     *
+     * @return void
+     */
+    private static void awaitLog(final long position)
+    {
+        final WriteAheadLog journal = log;
+
+        if (journal != null && position > 0)
+        {
+            try
+            {
+                journal.sync(position);
+            }
+            catch (IOException ioe)
+            {
+                throw new UncheckedIOException(ioe);
+            }
+        }
+    }
+
+    /**
+     * Register the records of a saved store with the secondary indexes
+     * unless already done, records stored since being registered as stored
+     *
+     * @return void
+     */
+    private static void ensureIndexed()
+    {
+        if (indexed)
+            return;
+
+        for (ReentrantLock lock : stripes)
+            lock.lock();
+        try
+        {
+            if (indexed)
+                return;
+
+            final Snapshot current = filingSystem.get();
+            final List<Person> saved = new ArrayList<>(current.size());
+
+            for (MemberTypes type : MemberTypes.values())
+                for (Iterator<Map.Entry<PersonKey, Person>> entries =
+                         current.partition(type).saved(); entries.hasNext();)
+                    saved.add(entries.next().getValue());
+
+            saved.parallelStream().forEach(Directory::indexAttributes);
+            textIndex.addAll(saved);
+            bitmapIndex.addAll(saved);
+
+            indexed = true;
+        }
+        finally
+        {
+            for (ReentrantLock lock : stripes)
+                lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieve the lock serializing writers of a key
+     *
+     * @param key - Identifier of the Person
+     *
+     * @return ReentrantLock - Lock stripe guarding the key
+     */
+    private static ReentrantLock stripeOf(final PersonKey key)
+    {
+        final int hash = key.hashCode();
+
+        return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+    }
+
+    /**
+     * Register a record with the secondary indexes
+     *
+     * @param person - Record to register
+     *
+     * @return void
+     */
+    private static void index(final Person person)
+    {
+        indexAttributes(person);
+        textIndex.add(person);
+        bitmapIndex.add(person);
+    }
+
+    /**
+     * Register a record with the e-mail and office indexes
+     *
+     * @param person - Record to register
+     *
+     * @return void
+     */
+    private static void indexAttributes(final Person person)
+    {
+        final String email = person.getEmail();
+
+        emailIndex.compute(email.hashCode(), (k, entry) -> {
+            final Person[] people = withEmailHash(entry);
+
+            // The record takes the place of any other with the same address
+            for (int i = 0; i < people.length; ++i)
+                if (email.equals(people[i].getEmail()))
+                {
+                    if (people.length == 1)
+                        return person;
+
+                    final Person[] replaced = people.clone();
+                    replaced[i] = person;
+                    return replaced;
+                }
+
+            if (people.length == 0)
+                return person;
+
+            final Person[] added = Arrays.copyOf(people, people.length + 1);
+
+            added[people.length] = person;
+            return added;
+        });
+
+        final String office = officeOf(person);
+
+        if (office != null)
+        {
+            officeIndex.compute(office, (k, members) -> {
+                if (members == null)
+                    members = ConcurrentHashMap.newKeySet();
+                members.add(person);
+                return members;
+            });
+        }
+    }
+
+    /**
+     * Withdraw a record from the secondary indexes
+     *
+     * @param person - Record to withdraw, ignored if null
+     *
+     * @return void
+     */
+    private static void unindex(final Person person)
+    {
+        if (person == null)
+            return;
+
+        unindexAttributes(person);
+        textIndex.remove(person);
+        bitmapIndex.remove(person);
+    }
+
+    /**
+     * Withdraw a record from the e-mail and office indexes
+     *
+     * @param person - Record to withdraw
+     *
+     * @return void
+     */
+    private static void unindexAttributes(final Person person)
+    {
+        emailIndex.computeIfPresent(person.getEmail().hashCode(), (k, entry) -> {
+            final Person[] people = withEmailHash(entry);
+
+            for (int i = 0; i < people.length; ++i)
+                if (people[i] == person)
+                {
+                    if (people.length == 1)
+                        return null;
+
+                    if (people.length == 2)
+                        return people[1 - i];
+
+                    final Person[] remaining = new Person[people.length - 1];
+
+                    System.arraycopy(people, 0, remaining, 0, i);
+                    System.arraycopy(people, i + 1, remaining, i, remaining.length - i);
+                    return remaining;
+                }
+
+            return entry;
+        });
+
+        final String office = officeOf(person);
+
+        if (office != null)
+        {
+            officeIndex.computeIfPresent(office, (k, members) -> {
+                members.remove(person);
+                return members.isEmpty() ? null : members;
+            });
+        }
+    }
+
+    /**
+     * Retrieve the records of an entry of the e-mail index
+     *
+     * @param entry - The record, an array of records or null
+     *
+     * @return Person[] - The records, none if the entry is null
+     */
+    private static Person[] withEmailHash(final Object entry)
+    {
+        if (entry == null)
+            return new Person[0];
+
+        return (entry instanceof Person) ? new Person[] { (Person) entry } : (Person[]) entry;
+    }
+
+    /**
+     * Merge ranges of the sorted partitions into a single sequence in key order
+     *
+     * @param ranges - One iterator per partition
+     *
+     * @return Stream<Person> - The records of the ranges in key order, or null
+     *                          if every range is empty
+     */
+    private static Stream<Person> nonEmpty(
+            final List<Iterator<Map.Entry<PersonKey, Person>>> ranges)
+    {
+        for (Iterator<Map.Entry<PersonKey, Person>> range : ranges)
+            if (range.hasNext())
+                return MergingIterator.stream(ranges);
+
+        return null;
+    }
+
+    /**
+     * Collect a page of records from ranges of the sorted partitions which
+     * already start after the previous page's continuation key
+     *
+     * @param remainders - One iterator per partition
+     * @param pageSize   - Maximum number of records on the page
+     *
+     * @return Page - The first records of the ranges
+     */
+    private static Page page(final List<Iterator<Map.Entry<PersonKey, Person>>> remainders,
+                             final int pageSize)
+    {
+        if (pageSize <= 0)
+            throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+
+        final Iterator<Person> records = new MergingIterator<>(remainders);
+        final List<Person> page = new ArrayList<>(Math.min(pageSize, 0x400));
+
+        while (page.size() < pageSize && records.hasNext())
+            page.add(records.next());
+
+        return new Page(page, records.hasNext()
+                                  ? page.get(page.size() - 1).getKey() : null);
+    }
+
+    /**
+     * Compute the smallest key greater than every key starting with a prefix
+     *
+     * @param prefix - Leading characters of a key
+     *
+     * @return String - Exclusive upper bound of the prefix's range, or null if
+     *                  the range is unbounded
+     */
+    private static String prefixEnd(final String prefix)
+    {
+        int last = prefix.length() - 1;
+
+        while (last >= 0 && prefix.charAt(last) == Character.MAX_VALUE)
+            --last;
+
+        if (last < 0)
+            return null;
+
+        return prefix.substring(0, last) + (char) (prefix.charAt(last) + 1);
+    }
+
+    /**
+     * Determine the member type of a record
+     *
+     * @param person - Record to classify
+     *
+     * @return MemberTypes - Member type of the record
+     */
+    static MemberTypes memberTypeOf(final Person person)
+    {
+        if (person instanceof Staff)
+            return MemberTypes.STAFF;
+
+        if (person instanceof Faculty)
+            return MemberTypes.FACULTY;
+
+        return MemberTypes.STUDENT;
+    }
+
+    /**
+     * Determine the office of a record if the member type has one
+     *
+     * @param person - Record to inspect
+     *
+     * @return String - Name of the office or null
+     */
+    static String officeOf(final Person person)
+    {
+        if (person instanceof Staff)
+            return ((Staff) person).getOffice();
+
+        if (person instanceof Faculty)
+            return ((Faculty) person).getOffice();
+
+        return null;
     }
 
 }
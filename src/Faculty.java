@@ -20,6 +20,14 @@
 
 package com.rico.felix.models;
 
+/*
+ * Platform Dependencies
+ */
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
+
 /**
  * This class is used to model a faculty member within the system.
  *
@@ -33,9 +41,18 @@ public final class Faculty extends Person
     // Field used for the serialization mechanism
     private static final long serialVersionUID = 4958318738235137176L;
 
-    // Fields for storing fundamental information for an object of this type
+    // Fields of the serialized form, which predates the packed fields
+    private static final ObjectStreamField[] serialPersistentFields =
+    {
+        new ObjectStreamField("tenured", boolean.class),
+        new ObjectStreamField("office", String.class)
+    };
+
+    // Position of the faculty member's office within the packed fields
+    private static final int OFFICE = DETAILS;
+
+    // Field for storing whether the faculty member is tenured
     private boolean tenured;
-    private String  office;
 
     /**
      * Parameterized constructor for an object of this type
@@ -49,9 +66,26 @@ public final class Faculty extends Person
     public Faculty(final String firstName, final String lastName, final String email,
             final boolean tenured, final String office)
     {
-        super(firstName, lastName, email);
+        super(firstName, lastName, email, office);
+        this.tenured = tenured;
+    }
+
+    /**
+     * Parameterized constructor for an object of this type restoring a
+     * faculty member previously persisted under a serial number
+     *
+     * @param firstName - Faculty member's first name
+     * @param lastName  - Faculty member's last name
+     * @param email     - Faculty member's email address
+     * @param tenured   - Whether the faculty member is tenured or not
+     * @param office    - Name of faculty member's office
+     * @param serial    - Serial number the faculty member was persisted with
+     */
+    public Faculty(final String firstName, final String lastName, final String email,
+            final boolean tenured, final String office, final long serial)
+    {
+        super(firstName, lastName, email, serial, office);
         this.tenured = tenured;
-        this.office  = office;
     }
 
     /**
@@ -65,53 +99,68 @@ public final class Faculty extends Person
     }
 
     /**
-     * Change whether an object of this type is tenured or not
-     *
-     * @param tenured - Whether the faculty member is tenured or not
+     * Retrieve name of office associated with an object of this type
      *
-     * @return void
+     * @return String - Name of office associated with the object
      */
-    public void setTenured(final boolean tenured)
+    public String getOffice()
     {
-        this.tenured = tenured;
+        return field(OFFICE);
     }
 
     /**
-     * Retrieve name of office associated with an object of this type
+     * Restore an object of this type from its serialized form
      *
-     * @return String - Name of office associated with the object
+     * @param in - Stream to read the object from
+     *
+     * @return void
+     *
+     * @throws IOException            - If the stream cannot be read
+     * @throws ClassNotFoundException - If a class of the stream is unknown
      */
-    public String getOffice()
+    private void readObject(final ObjectInputStream in)
+        throws IOException, ClassNotFoundException
     {
-        return office;
+        final ObjectInputStream.GetField persisted = in.readFields();
+
+        tenured = persisted.get("tenured", false);
+        setField(OFFICE, (String) persisted.get("office", null));
     }
 
     /**
-     * Change the name of office associated with an object of this type
+     * Persist an object of this type in its serialized form
      *
-     * @param newOffice - New name of office to associate with the object
+     * @param out - Stream to write the object to
      *
      * @return void
+     *
+     * @throws IOException - If the stream cannot be written
      */
-    public void setOffice(final String newOffice)
+    private void writeObject(final ObjectOutputStream out) throws IOException
     {
-        office = newOffice;
+        final ObjectOutputStream.PutField persisted = out.putFields();
+
+        persisted.put("tenured", tenured);
+        persisted.put("office", getOffice());
+
+        out.writeFields();
     }
 
     /**
-     * Retrieve the string representation of an object of this type
+     * Append the string representation of an object of this type
      *
-     * @return String - String representation for this object
+     * @param text - Builder to append the representation to
+     *
+     * @return void
      */
     @Override
-    public String toString()
+    protected void render(final StringBuilder text)
     {
-        return String.format(
-            "Faculty Member " + super.toString() + "Tenured: %s%n"
-            + "Office: %s%n%n",
-            (tenured ? "Yes" : "No"),
-            office
-        );
+        text.append("Faculty Member ");
+        super.render(text);
+        text.append("Tenured: ").append(tenured ? "Yes" : "No").append(NEWLINE)
+            .append("Office: ").append(getOffice()).append(NEWLINE)
+            .append(NEWLINE);
     }
 
 }
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2014-2015 Rico Antonio Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * @author Rico Antonio Felix <ricoantoniofelix@yahoo.com>
+ */
+
+package com.rico.felix.data;
+
+/*
+ * Platform Dependencies
+ */
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+
+/*
+ * Platform Dependency
+ */
+import java.util.function.Consumer;
+
+/*
+ * Local Dependencies
+ */
+import com.rico.felix.models.Person;
+import com.rico.felix.models.PersonKey;
+
+/**
+ * This class is used to traverse the records of several partitions merged in
+ * key order, in a form the fork/join framework can split evenly.
+ *
+ * The spliterator covers a half-open range of keys. Splitting picks the middle
+ * key of the largest partition within the range and cuts every partition at
+ * that key, each cut taking O(log n) thanks to the subtree sizes kept by the
+ * partitions' maps and the offset tables of mapped files, so both halves stay
+ * in key order and the left half precedes the right one.
+ */
+final class KeyRangeSpliterator implements Spliterator<Person>
+{
+    // Ranges holding fewer entries than this are traversed rather than split
+    private static final int MINIMUM_SPLIT = 0x400;
+
+    // Partitions whose records are being merged
+    private final List<Partition> partitions;
+
+    // Lowest key of the range, inclusive, or null for no lower bound
+    private PersonKey from;
+
+    // Highest key of the range, exclusive, or null for no upper bound
+    private final PersonKey to;
+
+    // Number of entries within the range yet to be traversed
+    private long remaining;
+
+    // Merge of the partitions within the range, created when traversal begins
+    private Iterator<Person> merged;
+
+    /**
+     * Parameterized constructor for an object of this type
+     *
+     * @param partitions - Partitions whose records are to be merged
+     */
+    KeyRangeSpliterator(final List<Partition> partitions)
+    {
+        this(partitions, null, null);
+    }
+
+    /**
+     * Parameterized constructor for an object of this type
+     *
+     * @param partitions - Partitions whose records are to be merged
+     * @param from       - Lowest key of the range, inclusive, or null for no lower bound
+     * @param to         - Highest key of the range, exclusive, or null for no upper bound
+     */
+    private KeyRangeSpliterator(final List<Partition> partitions,
+                                final PersonKey from, final PersonKey to)
+    {
+        this.partitions = partitions;
+        this.from      = from;
+        this.to        = to;
+        this.remaining = count(from, to);
+    }
+
+    @Override
+    public boolean tryAdvance(final Consumer<? super Person> action)
+    {
+        final Iterator<Person> values = merged();
+
+        if (!values.hasNext())
+            return false;
+
+        --remaining;
+        action.accept(values.next());
+
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(final Consumer<? super Person> action)
+    {
+        final Iterator<Person> values = merged();
+
+        while (values.hasNext())
+            action.accept(values.next());
+
+        remaining = 0;
+    }
+
+    @Override
+    public Spliterator<Person> trySplit()
+    {
+        if (merged != null || remaining < MINIMUM_SPLIT)
+            return null;
+
+        // Cut at the middle key of the partition holding most of the range
+        Partition largest = null;
+        int most = 0;
+
+        for (Partition partition : partitions)
+        {
+            final int start = (from == null) ? 0 : partition.rank(from);
+            final int end   = (to == null) ? partition.size() : partition.rank(to);
+
+            if (largest == null || end - start > most)
+            {
+                largest = partition;
+                most    = end - start;
+            }
+        }
+
+        final PersonKey middle = largest.splitKey(from, to);
+        final KeyRangeSpliterator prefix = new KeyRangeSpliterator(partitions, from, middle);
+
+        from       = middle;
+        remaining -= prefix.remaining;
+
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize()
+    {
+        return remaining;
+    }
+
+    @Override
+    public int characteristics()
+    {
+        return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+    }
+
+    /**
+     * Count the records of every partition within a range of keys
+     *
+     * @param from - Lowest key of the range, inclusive, or null for no lower bound
+     * @param to   - Highest key of the range, exclusive, or null for no upper bound
+     *
+     * @return long - Number of records within the range
+     */
+    private long count(final PersonKey from, final PersonKey to)
+    {
+        long count = 0;
+
+        for (Partition partition : partitions)
+            count += ((to == null) ? partition.size() : partition.rank(to))
+                   - ((from == null) ? 0 : partition.rank(from));
+
+        return count;
+    }
+
+    private Iterator<Person> merged()
+    {
+        if (merged == null)
+        {
+            final List<Iterator<Map.Entry<PersonKey, Person>>> ranges =
+                new ArrayList<>(partitions.size());
+
+            for (Partition partition : partitions)
+                ranges.add(partition.iterator(from, true, to, false));
+
+            merged = new MergingIterator<>(ranges);
+        }
+
+        return merged;
+    }
+
+}
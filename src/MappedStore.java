@@ -0,0 +1,664 @@
+/*
+ * Copyright 2014-2015 Rico Antonio Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * @author Rico Antonio Felix <ricoantoniofelix@yahoo.com>
+ */
+
+package com.rico.felix.data;
+
+/*
+ * Platform Dependencies
+ */
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+/*
+ * Platform Dependencies
+ */
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Platform Dependencies
+ */
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.IntPredicate;
+
+/*
+ * Local Dependencies
+ */
+import com.rico.felix.models.Person;
+import com.rico.felix.models.PersonKey;
+
+/*
+ * Local Dependency
+ */
+import com.rico.felix.auxiliary.MemberTypes;
+
+/**
+ * This class is used as a read-only view of a saved database mapped into
+ * memory, whose records are decoded only when touched.
+ *
+ * The records of each member type lie in compressed blocks in key order,
+ * the leaves of a B+tree whose 4 KB pages count the records below each child,
+ * so a record is found by its key or its position in key order reading one
+ * page per level and then searching a single decompressed block. Opening the
+ * store reads nothing but the trailer, a few bytes per member type, and two
+ * small caches keep the pages and blocks decoded most recently, so the heap
+ * needed stays the same for any number of records. A range scan descends the
+ * tree once and then reads the blocks in file order, where they lie next to
+ * each other.
+ *
+ * A record decoded once is handed out again for as long as anybody holds on
+ * to it, so identity comparisons and the secondary indexes keep working.
+ */
+final class MappedStore implements SavedStore
+{
+    // Number of decompressed blocks and decoded index pages kept at hand
+    private static final int CACHED_BLOCKS = 0x40;
+    private static final int CACHED_PAGES  = 0x100;
+
+    // Contents of the file, never modified
+    private final ByteBuffer contents;
+
+    // One section per member type, indexed by the type's ordinal
+    private final Section[] sections;
+
+    // Records decoded so far keyed by block offset and position within the block
+    private final DecodedRecords decoded = new DecodedRecords();
+
+    // Blocks decompressed most recently keyed by file offset, in access order
+    private final Map<Integer, Block> cache = Collections.synchronizedMap(
+        new LinkedHashMap<Integer, Block>(CACHED_BLOCKS * 2, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Integer, Block> eldest)
+            {
+                return size() > CACHED_BLOCKS;
+            }
+        });
+
+    // Index pages decoded most recently keyed by file offset, in access order
+    private final Map<Integer, Page> pages = Collections.synchronizedMap(
+        new LinkedHashMap<Integer, Page>(CACHED_PAGES * 2, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Integer, Page> eldest)
+            {
+                return size() > CACHED_PAGES;
+            }
+        });
+
+    /**
+     * Parameterized constructor for an object of this type
+     *
+     * @param contents - Contents of the file
+     * @param roots    - Per member type ordinal, the root of the type's block
+     *                   index or null if the type has no records
+     */
+    private MappedStore(final ByteBuffer contents, final List<PersonCodec.Block> roots)
+    {
+        this.contents = contents;
+        this.sections = new Section[MemberTypes.values().length];
+
+        for (int type = 0; type < sections.length; ++type)
+            sections[type] = new Section(roots.get(type));
+    }
+
+    /**
+     * Map a saved database into memory
+     *
+     * @param path - Location of the saved database
+     *
+     * @return MappedStore - The mapped database, or null if there is no file or
+     *                       it predates the paged block index
+     *
+     * @throws IOException - If the file cannot be mapped or is corrupt
+     */
+    static MappedStore open(final Path path) throws IOException
+    {
+        if (!Files.exists(path))
+            return null;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            final long size = channel.size();
+
+            if (size > Integer.MAX_VALUE)
+                throw new IOException("Database too large to map: " + size + " bytes");
+
+            // The mapping outlives the channel and the file's later replacement
+            final MappedByteBuffer contents =
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            if (size < Integer.BYTES + 1 + PersonCodec.FOOTER_SIZE
+                    || contents.getInt(0) != PersonCodec.MAGIC
+                    || contents.get(Integer.BYTES) < PersonCodec.INDEXED)
+                return null;
+
+            final int end = (int) size;
+
+            if (contents.getInt(end - Integer.BYTES) != PersonCodec.MAGIC)
+                throw new IOException("Database trailer is corrupt");
+
+            final int trailer = contents.getInt(end - 2 * Integer.BYTES);
+
+            if (trailer < 0 || trailer > end - PersonCodec.FOOTER_SIZE)
+                throw new IOException("Database trailer is corrupt");
+
+            // Serials handed out later must exceed those of undecoded records
+            PersonKey.reserve(contents.getLong(end - PersonCodec.FOOTER_SIZE));
+
+            final ByteBuffer index = contents.duplicate();
+
+            index.position(trailer).limit(end - PersonCodec.FOOTER_SIZE);
+
+            return new MappedStore(contents, PersonCodec.readTrailer(
+                       new DataInputStream(new BufferInput(index)),
+                       MemberTypes.values().length));
+        }
+    }
+
+    /**
+     * Retrieve the records of a member type
+     *
+     * @param type - Member type of the records
+     *
+     * @return Section - The type's records in key order
+     */
+    @Override
+    public Section section(final MemberTypes type)
+    {
+        return sections[type.ordinal()];
+    }
+
+    /**
+     * Retrieve a decompressed block, decompressing it unless cached
+     */
+    private Block blockAt(final int offset)
+    {
+        final Block cached = cache.get(offset);
+
+        if (cached != null)
+            return cached;
+
+        try
+        {
+            final int compressedLength = contents.getInt(offset);
+            final int length = contents.getInt(offset + Integer.BYTES);
+
+            if (compressedLength < 0
+                    || compressedLength > contents.limit() - offset - PersonCodec.BLOCK_HEADER)
+                throw new IOException("Block is corrupt at offset " + offset);
+
+            final byte[] compressed = new byte[compressedLength];
+            final ByteBuffer source = contents.duplicate();
+
+            source.position(offset + PersonCodec.BLOCK_HEADER);
+            source.get(compressed);
+
+            final Block block = new Block(offset, offset + PersonCodec.BLOCK_HEADER
+                                          + compressedLength,
+                                          PersonCodec.inflate(compressed, length));
+
+            cache.put(offset, block);
+
+            return block;
+        }
+        catch (IOException ioe)
+        {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    /**
+     * Retrieve a decoded index page, decoding it unless cached
+     */
+    private Page pageAt(final int offset)
+    {
+        final Page cached = pages.get(offset);
+
+        if (cached != null)
+            return cached;
+
+        if (offset < 0 || offset > contents.limit() - PersonCodec.PAGE_SIZE)
+            throw new UncheckedIOException(new IOException(
+                "Block index is corrupt at offset " + offset));
+
+        final ByteBuffer source = contents.duplicate();
+
+        source.position(offset);
+
+        try
+        {
+            final Page page = new Page(PersonCodec.readNode(
+                                  new DataInputStream(new BufferInput(source))));
+
+            pages.put(offset, page);
+
+            return page;
+        }
+        catch (IOException ioe)
+        {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    /**
+     * Decode the record at a position within a block, or hand out the record
+     * decoded there before if it is still reachable, along with the key it
+     * was saved under
+     */
+    private Map.Entry<PersonKey, Person> entryAt(final Block block, final int position)
+    {
+        return decoded.entryAt(((long) block.offset << 32) | position,
+                               () -> block.recordAt(position));
+    }
+
+    /**
+     * Records of a single member type in key order
+     */
+    final class Section implements SavedStore.Section
+    {
+        // Offset of the root page of the block index, or -1 without records
+        private final int root;
+
+        // Number of records
+        private final int size;
+
+        Section(final PersonCodec.Block root)
+        {
+            this.root = (root != null) ? root.offset : -1;
+            this.size = (root != null) ? root.count : 0;
+        }
+
+        @Override
+        public int size()
+        {
+            return size;
+        }
+
+        /**
+         * Retrieve the key of the record at a position in key order, decoding
+         * the key alone rather than the whole record
+         */
+        @Override
+        public PersonKey keyAt(final int index)
+        {
+            final Leaf leaf = leafOf(index);
+
+            return leaf.block.keyAt(index - leaf.start);
+        }
+
+        /**
+         * Retrieve the record at a position in key order
+         */
+        @Override
+        public Person recordAt(final int index)
+        {
+            final Leaf leaf = leafOf(index);
+
+            return entryAt(leaf.block, index - leaf.start).getValue();
+        }
+
+        /**
+         * Count the records whose key precedes a key, descending one page per
+         * level and decompressing no more than the one block the key falls into
+         */
+        @Override
+        public int rank(final PersonKey key)
+        {
+            if (root < 0)
+                return 0;
+
+            Page page = pageAt(root);
+            int start = 0;
+
+            for (;;)
+            {
+                final Page node = page;
+
+                // Number of children whose first key precedes the key
+                final int preceding = search(node.offsets.length,
+                                             i -> node.keys[i].compareTo(key) < 0);
+
+                if (preceding == 0)
+                    return start;
+
+                final int child = preceding - 1;
+
+                start += node.starts[child];
+
+                if (node.level == 0)
+                {
+                    final Block records = blockAt(node.offsets[child]);
+
+                    return start + search(records.size(),
+                                          i -> records.keyAt(i).compareTo(key) < 0);
+                }
+
+                page = pageAt(node.offsets[child]);
+            }
+        }
+
+        /**
+         * Determine whether a record is associated with a key, decoding no
+         * more than keys
+         */
+        @Override
+        public boolean contains(final PersonKey key)
+        {
+            final int index = rank(key);
+
+            return index < size() && keyAt(index).equals(key);
+        }
+
+        /**
+         * Retrieve the record associated with a key or null
+         */
+        @Override
+        public Person get(final PersonKey key)
+        {
+            final int index = rank(key);
+
+            return (index < size() && keyAt(index).equals(key)) ? recordAt(index) : null;
+        }
+
+        /**
+         * Iterate over the records within a range of keys in key order
+         */
+        @Override
+        public Iterator<Map.Entry<PersonKey, Person>> iterator(final PersonKey from,
+                final boolean fromInclusive, final PersonKey to, final boolean toInclusive)
+        {
+            int start = (from == null) ? 0 : rank(from);
+            int end   = (to == null) ? size() : rank(to);
+
+            if (from != null && !fromInclusive && start < size() && keyAt(start).equals(from))
+                ++start;
+
+            if (to != null && toInclusive && end < size() && keyAt(end).equals(to))
+                ++end;
+
+            return new SliceIterator(start, end);
+        }
+
+        /**
+         * Count the leading positions below a limit for which a test holds,
+         * the test holding for a prefix of the positions
+         */
+        private int search(final int limit, final IntPredicate precedes)
+        {
+            int low  = 0;
+            int high = limit;
+
+            while (low < high)
+            {
+                final int middle = (low + high) >>> 1;
+
+                if (precedes.test(middle))
+                    low = middle + 1;
+                else
+                    high = middle;
+            }
+
+            return low;
+        }
+
+        /**
+         * Find the block holding the record at a position in key order,
+         * descending one page per level
+         */
+        private Leaf leafOf(final int index)
+        {
+            if (index < 0 || index >= size)
+                throw new IndexOutOfBoundsException("Position: " + index);
+
+            Page page = pageAt(root);
+            int start = 0;
+
+            for (;;)
+            {
+                final int found = Arrays.binarySearch(page.starts, 0,
+                                                      page.offsets.length, index - start);
+                final int child = (found >= 0) ? found : -(found + 1) - 1;
+
+                start += page.starts[child];
+
+                if (page.level == 0)
+                    return new Leaf(blockAt(page.offsets[child]), start);
+
+                page = pageAt(page.offsets[child]);
+            }
+        }
+
+        /**
+         * Iterator decoding the records of a range of positions in key order,
+         * holding on to the block it is reading and moving on to the block
+         * next to it in the file
+         */
+        private final class SliceIterator implements Iterator<Map.Entry<PersonKey, Person>>
+        {
+            private int next;
+            private final int end;
+
+            private Block block;
+            private int start;
+
+            SliceIterator(final int start, final int end)
+            {
+                this.next = start;
+                this.end  = end;
+            }
+
+            @Override
+            public boolean hasNext()
+            {
+                return next < end;
+            }
+
+            @Override
+            public Map.Entry<PersonKey, Person> next()
+            {
+                if (next >= end)
+                    throw new NoSuchElementException();
+
+                if (block == null)
+                {
+                    final Leaf leaf = leafOf(next);
+
+                    block = leaf.block;
+                    start = leaf.start;
+                }
+                else if (next - start >= block.size())
+                {
+                    start += block.size();
+                    block  = blockAt(block.end);
+                }
+
+                return entryAt(block, next++ - start);
+            }
+        }
+    }
+
+    /**
+     * Block located by a descent of the block index, along with the position
+     * in key order of its first record
+     */
+    private static final class Leaf
+    {
+        private final Block block;
+        private final int start;
+
+        Leaf(final Block block, final int start)
+        {
+            this.block = block;
+            this.start = start;
+        }
+    }
+
+    /**
+     * Decoded index page, with the position below the page of each child's
+     * first record
+     */
+    private static final class Page
+    {
+        private final int level;
+        private final int[] offsets;
+        private final int[] starts;
+        private final PersonKey[] keys;
+
+        Page(final PersonCodec.Node node)
+        {
+            final int count = node.entries.length;
+
+            this.level   = node.level;
+            this.offsets = new int[count];
+            this.starts  = new int[count];
+            this.keys    = new PersonKey[count];
+
+            for (int i = 0; i < count; ++i)
+            {
+                offsets[i] = node.entries[i].offset;
+                keys[i]    = node.entries[i].firstKey;
+
+                if (i + 1 < count)
+                    starts[i + 1] = starts[i] + node.entries[i].count;
+            }
+        }
+    }
+
+    /**
+     * Decompressed block, whose keys are decoded as the searches reach them
+     */
+    private static final class Block
+    {
+        private final int offset;
+        private final int end;
+        private final byte[] records;
+        private final int[] positions;
+        private final PersonKey[] keys;
+
+        Block(final int offset, final int end, final byte[] records) throws IOException
+        {
+            this.offset    = offset;
+            this.end       = end;
+            this.records   = records;
+            this.positions = PersonCodec.blockPositions(records);
+            this.keys      = new PersonKey[positions.length];
+        }
+
+        /**
+         * Retrieve the number of records within this block
+         */
+        int size()
+        {
+            return positions.length;
+        }
+
+        /**
+         * Decode the key of the record at a position within this block, as
+         * saved, concurrent callers at worst decoding it twice
+         */
+        PersonKey keyAt(final int position)
+        {
+            PersonKey key = keys[position];
+
+            if (key == null)
+                keys[position] = key = (PersonKey) decode(position, true);
+
+            return key;
+        }
+
+        /**
+         * Decode the record at a position within this block
+         */
+        Person recordAt(final int position)
+        {
+            return (Person) decode(position, false);
+        }
+
+        private Object decode(final int position, final boolean keyOnly)
+        {
+            final int start = positions[position];
+            final DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+                                           records, start, records.length - start));
+
+            try
+            {
+                return keyOnly ? PersonCodec.readKey(in) : PersonCodec.read(in);
+            }
+            catch (IOException ioe)
+            {
+                throw new UncheckedIOException(ioe);
+            }
+        }
+    }
+
+    /**
+     * Input stream reading from a buffer's position onwards
+     */
+    private static final class BufferInput extends InputStream
+    {
+        private final ByteBuffer source;
+
+        BufferInput(final ByteBuffer source)
+        {
+            this.source = source;
+        }
+
+        @Override
+        public int read()
+        {
+            return source.hasRemaining() ? (source.get() & 0xFF) : -1;
+        }
+
+        @Override
+        public int read(final byte[] bytes, final int offset, final int length)
+        {
+            if (length == 0)
+                return 0;
+
+            if (!source.hasRemaining())
+                return -1;
+
+            final int count = Math.min(length, source.remaining());
+
+            source.get(bytes, offset, count);
+
+            return count;
+        }
+    }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2014-2015 Rico Antonio Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * @author Rico Antonio Felix <ricoantoniofelix@yahoo.com>
+ */
+
+package com.rico.felix.data;
+
+/*
+ * Platform Dependencies
+ */
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+
+/*
+ * Platform Dependencies
+ */
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * This class is used to perform a k-way merge over sorted sequences of entries
+ * by always yielding the value with the smallest key among the sequences'
+ * current heads.
+ */
+final class MergingIterator<K extends Comparable<? super K>, V> implements Iterator<V>
+{
+    // Sequences' current heads ordered by key
+    private final PriorityQueue<Head<K, V>> heads = new PriorityQueue<>();
+
+    /**
+     * Parameterized constructor for an object of this type
+     *
+     * @param sequences - Iterators over entries sorted by key
+     */
+    MergingIterator(final Iterable<Iterator<Map.Entry<K, V>>> sequences)
+    {
+        for (Iterator<Map.Entry<K, V>> sequence : sequences)
+            advance(sequence);
+    }
+
+    /**
+     * Merge sorted sequences of entries into a single stream of values in key order
+     *
+     * @param sequences - Iterators over entries sorted by key
+     *
+     * @return Stream<V> - Values of every sequence in key order
+     */
+    static <K extends Comparable<? super K>, V> Stream<V> stream(
+            final Iterable<Iterator<Map.Entry<K, V>>> sequences)
+    {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(
+                   new MergingIterator<>(sequences),
+                   Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        return !heads.isEmpty();
+    }
+
+    @Override
+    public V next()
+    {
+        final Head<K, V> head = heads.poll();
+
+        if (head == null)
+            throw new NoSuchElementException();
+
+        advance(head.rest);
+
+        return head.entry.getValue();
+    }
+
+    private void advance(final Iterator<Map.Entry<K, V>> rest)
+    {
+        if (rest.hasNext())
+            heads.add(new Head<>(rest.next(), rest));
+    }
+
+    /**
+     * Current entry of a sequence along with the sequence's remainder
+     */
+    private static final class Head<K extends Comparable<? super K>, V>
+        implements Comparable<Head<K, V>>
+    {
+        private final Map.Entry<K, V> entry;
+        private final Iterator<Map.Entry<K, V>> rest;
+
+        Head(final Map.Entry<K, V> entry, final Iterator<Map.Entry<K, V>> rest)
+        {
+            this.entry = entry;
+            this.rest  = rest;
+        }
+
+        @Override
+        public int compareTo(final Head<K, V> other)
+        {
+            return entry.getKey().compareTo(other.entry.getKey());
+        }
+    }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2014-2015 Rico Antonio Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * @author Rico Antonio Felix <ricoantoniofelix@yahoo.com>
+ */
+
+package com.rico.felix.data;
+
+/*
+ * Platform Dependencies
+ */
+import java.util.Collections;
+import java.util.List;
+
+/*
+ * Local Dependencies
+ */
+import com.rico.felix.models.Person;
+import com.rico.felix.models.PersonKey;
+
+/**
+ * This class is used to hold one page of a directory listing along with the
+ * continuation key needed to fetch the page which follows it.
+ */
+public final class Page
+{
+    // Records of this page in key order
+    private final List<Person> records;
+
+    // Opaque position after this page's last record, null on the last page
+    private final PersonKey continuationKey;
+
+    /**
+     * Parameterized constructor for an object of this type
+     *
+     * @param records         - Records of the page in key order
+     * @param continuationKey - Position to resume from or null on the last page
+     */
+    Page(final List<Person> records, final PersonKey continuationKey)
+    {
+        this.records         = Collections.unmodifiableList(records);
+        this.continuationKey = continuationKey;
+    }
+
+    /**
+     * Retrieve the records of this page
+     *
+     * @return List<Person> - Records of the page in key order
+     */
+    public List<Person> getRecords()
+    {
+        return records;
+    }
+
+    /**
+     * Retrieve the key to pass back to the directory for the following page
+     *
+     * @return PersonKey - Continuation key or null if this is the last page
+     */
+    public PersonKey getContinuationKey()
+    {
+        return continuationKey;
+    }
+
+    /**
+     * Determine whether a page follows this one
+     *
+     * @return boolean - true if more records remain, false otherwise
+     */
+    public boolean hasNext()
+    {
+        return continuationKey != null;
+    }
+
+}
@@ -0,0 +1,443 @@
+/*
+ * Copyright 2014-2015 Rico Antonio Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * @author Rico Antonio Felix <ricoantoniofelix@yahoo.com>
+ */
+
+package com.rico.felix.data;
+
+/*
+ * Platform Dependencies
+ */
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/*
+ * Local Dependencies
+ */
+import com.rico.felix.models.Person;
+import com.rico.felix.models.PersonKey;
+
+/**
+ * This class is used as the immutable set of records of a single member type.
+ *
+ * The records of a saved store, mapped or columnar, form the partition's
+ * base if there is one, and the records stored since form a delta kept in a
+ * persistent sorted map.
+ * A base record replaced or removed since is hidden rather than touched, so
+ * the base is never modified and a base record is decoded only when read.
+ * Every key belongs to at most one of the delta and the visible base.
+ */
+final class Partition
+{
+    // Partition without any records
+    static final Partition EMPTY = new Partition(null, PersistentSortedMap.empty(),
+                                                 PersistentSortedMap.empty());
+
+    // Records of a saved store or null
+    private final SavedStore.Section base;
+
+    // Records stored since the base was restored
+    private final PersistentSortedMap<PersonKey, Person> delta;
+
+    // Keys of the base records replaced or removed since
+    private final PersistentSortedMap<PersonKey, PersonKey> hidden;
+
+    /**
+     * Parameterized constructor for an object of this type
+     *
+     * @param base   - Records of a saved store or null
+     * @param delta  - Records stored since the base was restored
+     * @param hidden - Keys of the base records replaced or removed since
+     */
+    private Partition(final SavedStore.Section base,
+                      final PersistentSortedMap<PersonKey, Person> delta,
+                      final PersistentSortedMap<PersonKey, PersonKey> hidden)
+    {
+        this.base   = base;
+        this.delta  = delta;
+        this.hidden = hidden;
+    }
+
+    /**
+     * Produce a partition made up of the records of a saved store
+     *
+     * @param base - Records of a saved store
+     *
+     * @return Partition - The partition holding exactly the saved records
+     */
+    static Partition of(final SavedStore.Section base)
+    {
+        return new Partition(base, PersistentSortedMap.empty(), PersistentSortedMap.empty());
+    }
+
+    /**
+     * Retrieve the number of records within this partition
+     *
+     * @return int - Number of records
+     */
+    int size()
+    {
+        return ((base == null) ? 0 : base.size() - hidden.size()) + delta.size();
+    }
+
+    /**
+     * Determine whether this partition holds no records
+     *
+     * @return boolean - true if there are no records, false otherwise
+     */
+    boolean isEmpty()
+    {
+        return size() == 0;
+    }
+
+    /**
+     * Determine whether this partition has a saved store as its base
+     *
+     * @return boolean - true if records are read from a saved store
+     */
+    boolean hasBase()
+    {
+        return base != null;
+    }
+
+    /**
+     * Retrieve the record associated with a key
+     *
+     * @param key - Identifier of the Person
+     *
+     * @return Person - The associated record or null
+     */
+    Person get(final PersonKey key)
+    {
+        final Person person = delta.get(key);
+
+        return (person != null) ? person : saved(key);
+    }
+
+    /**
+     * Retrieve the visible base record associated with a key
+     *
+     * @param key - Identifier of the Person
+     *
+     * @return Person - The saved record, or null if there is none or it was
+     *                  replaced or removed since
+     */
+    Person saved(final PersonKey key)
+    {
+        if (base == null || hidden.get(key) != null)
+            return null;
+
+        return base.get(key);
+    }
+
+    /**
+     * Retrieve the entry with the least key greater than or equal to a key
+     *
+     * @param key - Key to search for
+     *
+     * @return Map.Entry<PersonKey, Person> - The entry found or null
+     */
+    Map.Entry<PersonKey, Person> ceilingEntry(final PersonKey key)
+    {
+        if (base == null)
+            return delta.ceilingEntry(key);
+
+        final Iterator<Map.Entry<PersonKey, Person>> entries = iterator(key, true, null, false);
+
+        return entries.hasNext() ? entries.next() : null;
+    }
+
+    /**
+     * Produce a partition with a record associated with a key
+     *
+     * @param key    - Identifier of the Person
+     * @param person - Record to associate with the key
+     *
+     * @return Partition - The updated partition
+     */
+    Partition put(final PersonKey key, final Person person)
+    {
+        final PersistentSortedMap<PersonKey, Person> stored = delta.put(key, person);
+        final PersistentSortedMap<PersonKey, PersonKey> shadowed = hide(key);
+
+        if (stored == delta && shadowed == hidden)
+            return this;
+
+        return new Partition(base, stored, shadowed);
+    }
+
+    /**
+     * Produce a partition without the record associated with a key
+     *
+     * @param key - Identifier of the Person
+     *
+     * @return Partition - The updated partition, or this partition if the key
+     *                     is absent
+     */
+    Partition remove(final PersonKey key)
+    {
+        final PersistentSortedMap<PersonKey, Person> trimmed = delta.remove(key);
+        final PersistentSortedMap<PersonKey, PersonKey> shadowed = hide(key);
+
+        if (trimmed == delta && shadowed == hidden)
+            return this;
+
+        return new Partition(base, trimmed, shadowed);
+    }
+
+    /**
+     * Retrieve the records stored since the base was restored
+     *
+     * @return PersistentSortedMap<PersonKey, Person> - The partition's delta
+     */
+    PersistentSortedMap<PersonKey, Person> delta()
+    {
+        return delta;
+    }
+
+    /**
+     * Produce a partition with its delta replaced, the replacement must not
+     * hold any key of the visible base
+     *
+     * @param replacement - Records stored since the base was restored
+     *
+     * @return Partition - The updated partition
+     */
+    Partition withDelta(final PersistentSortedMap<PersonKey, Person> replacement)
+    {
+        return (replacement == delta) ? this : new Partition(base, replacement, hidden);
+    }
+
+    /**
+     * Produce a partition whose base record associated with a key is hidden
+     *
+     * @param key - Identifier of the Person
+     *
+     * @return Partition - The updated partition
+     */
+    Partition withHidden(final PersonKey key)
+    {
+        final PersistentSortedMap<PersonKey, PersonKey> shadowed = hide(key);
+
+        return (shadowed == hidden) ? this : new Partition(base, delta, shadowed);
+    }
+
+    /**
+     * Count the records whose key precedes a key
+     *
+     * @param key - Key to compare against
+     *
+     * @return int - Number of records with a lesser key
+     */
+    int rank(final PersonKey key)
+    {
+        final int saved = (base == null) ? 0 : base.rank(key) - hidden.rank(key);
+
+        return saved + delta.rank(key);
+    }
+
+    /**
+     * Pick a key splitting a range of keys roughly in half
+     *
+     * @param from - Lowest key of the range, inclusive, or null for no lower bound
+     * @param to   - Highest key of the range, exclusive, or null for no upper bound
+     *
+     * @return PersonKey - Middle key of the base or the delta, whichever holds
+     *                     more of the range
+     */
+    PersonKey splitKey(final PersonKey from, final PersonKey to)
+    {
+        final int low  = (from == null) ? 0 : delta.rank(from);
+        final int high = (to == null) ? delta.size() : delta.rank(to);
+
+        if (base != null)
+        {
+            final int start = (from == null) ? 0 : base.rank(from);
+            final int end   = (to == null) ? base.size() : base.rank(to);
+
+            if (end - start > high - low)
+                return base.keyAt((start + end) >>> 1);
+        }
+
+        return delta.keyAt((low + high) >>> 1);
+    }
+
+    /**
+     * Iterate over every record in key order
+     *
+     * @return Iterator<Map.Entry<PersonKey, Person>> - Entries in key order
+     */
+    Iterator<Map.Entry<PersonKey, Person>> iterator()
+    {
+        return iterator(null, true, null, false);
+    }
+
+    /**
+     * Iterate over the records within a range of keys in key order
+     *
+     * @param from          - Lowest key of the range or null for no lower bound
+     * @param fromInclusive - Whether a record keyed by from belongs to the range
+     * @param to            - Highest key of the range or null for no upper bound
+     * @param toInclusive   - Whether a record keyed by to belongs to the range
+     *
+     * @return Iterator<Map.Entry<PersonKey, Person>> - Entries in key order
+     */
+    Iterator<Map.Entry<PersonKey, Person>> iterator(final PersonKey from,
+            final boolean fromInclusive, final PersonKey to, final boolean toInclusive)
+    {
+        final Iterator<Map.Entry<PersonKey, Person>> stored =
+            delta.iterator(from, fromInclusive, to, toInclusive);
+
+        if (base == null)
+            return stored;
+
+        return new Overlay(saved(from, fromInclusive, to, toInclusive), stored);
+    }
+
+    /**
+     * Iterate over the visible base records in key order
+     *
+     * @return Iterator<Map.Entry<PersonKey, Person>> - Entries in key order
+     */
+    Iterator<Map.Entry<PersonKey, Person>> saved()
+    {
+        return saved(null, true, null, false);
+    }
+
+    private Iterator<Map.Entry<PersonKey, Person>> saved(final PersonKey from,
+            final boolean fromInclusive, final PersonKey to, final boolean toInclusive)
+    {
+        if (base == null)
+            return PersistentSortedMap.<PersonKey, Person>empty().iterator();
+
+        final Iterator<Map.Entry<PersonKey, Person>> entries =
+            base.iterator(from, fromInclusive, to, toInclusive);
+
+        return hidden.isEmpty() ? entries : new Visible(entries);
+    }
+
+    /**
+     * Hide the base record associated with a key if it is visible
+     */
+    private PersistentSortedMap<PersonKey, PersonKey> hide(final PersonKey key)
+    {
+        if (base == null || hidden.get(key) != null || !base.contains(key))
+            return hidden;
+
+        return hidden.put(key, key);
+    }
+
+    /**
+     * Iterator skipping the base records hidden since the base was restored
+     */
+    private final class Visible implements Iterator<Map.Entry<PersonKey, Person>>
+    {
+        private final Iterator<Map.Entry<PersonKey, Person>> entries;
+        private Map.Entry<PersonKey, Person> next;
+
+        Visible(final Iterator<Map.Entry<PersonKey, Person>> entries)
+        {
+            this.entries = entries;
+            advance();
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<PersonKey, Person> next()
+        {
+            if (next == null)
+                throw new NoSuchElementException();
+
+            final Map.Entry<PersonKey, Person> current = next;
+
+            advance();
+
+            return current;
+        }
+
+        private void advance()
+        {
+            next = null;
+
+            while (next == null && entries.hasNext())
+            {
+                final Map.Entry<PersonKey, Person> entry = entries.next();
+
+                if (hidden.get(entry.getKey()) == null)
+                    next = entry;
+            }
+        }
+    }
+
+    /**
+     * Iterator merging the visible base records with the delta in key order,
+     * the two never sharing a key
+     */
+    private static final class Overlay implements Iterator<Map.Entry<PersonKey, Person>>
+    {
+        private final Iterator<Map.Entry<PersonKey, Person>> saved;
+        private final Iterator<Map.Entry<PersonKey, Person>> stored;
+
+        private Map.Entry<PersonKey, Person> nextSaved;
+        private Map.Entry<PersonKey, Person> nextStored;
+
+        Overlay(final Iterator<Map.Entry<PersonKey, Person>> saved,
+                final Iterator<Map.Entry<PersonKey, Person>> stored)
+        {
+            this.saved      = saved;
+            this.stored     = stored;
+            this.nextSaved  = saved.hasNext() ? saved.next() : null;
+            this.nextStored = stored.hasNext() ? stored.next() : null;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return nextSaved != null || nextStored != null;
+        }
+
+        @Override
+        public Map.Entry<PersonKey, Person> next()
+        {
+            final Map.Entry<PersonKey, Person> current;
+
+            if (nextSaved != null && (nextStored == null
+                    || nextSaved.getKey().compareTo(nextStored.getKey()) < 0))
+            {
+                current   = nextSaved;
+                nextSaved = saved.hasNext() ? saved.next() : null;
+            }
+            else if (nextStored != null)
+            {
+                current    = nextStored;
+                nextStored = stored.hasNext() ? stored.next() : null;
+            }
+            else
+                throw new NoSuchElementException();
+
+            return current;
+        }
+    }
+
+}
@@ -0,0 +1,540 @@
+/*
+ * Copyright 2014-2015 Rico Antonio Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * @author Rico Antonio Felix <ricoantoniofelix@yahoo.com>
+ */
+
+package com.rico.felix.data;
+
+/*
+ * Platform Dependencies
+ */
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * This class is used as an immutable sorted map whose updates return a new
+ * map sharing every untouched node with the original.
+ *
+ * The map is a height balanced binary search tree, an update copies only the
+ * O(log n) nodes on the path to the changed key so any version may be kept
+ * as a snapshot at no cost while newer versions are being produced.
+ */
+final class PersistentSortedMap<K extends Comparable<? super K>, V>
+{
+    // Map without any entries shared by every empty version
+    @SuppressWarnings("rawtypes")
+    private static final PersistentSortedMap EMPTY = new PersistentSortedMap<>(null);
+
+    // Root of the tree, null when the map is empty
+    private final Node<K, V> root;
+
+    /**
+     * Parameterized constructor for an object of this type
+     *
+     * @param root - Root of the tree or null
+     */
+    private PersistentSortedMap(final Node<K, V> root)
+    {
+        this.root = root;
+    }
+
+    /**
+     * Retrieve the map without any entries
+     *
+     * @return PersistentSortedMap<K, V> - The empty map
+     */
+    @SuppressWarnings("unchecked")
+    static <K extends Comparable<? super K>, V> PersistentSortedMap<K, V> empty()
+    {
+        return EMPTY;
+    }
+
+    /**
+     * Build a map from entries already sorted by strictly ascending key in a
+     * single bottom-up pass
+     *
+     * @param keys   - Keys in strictly ascending order
+     * @param values - Values associated with the keys at the same positions
+     * @param size   - Number of entries to take from the arrays
+     *
+     * @return PersistentSortedMap<K, V> - Map holding the entries
+     */
+    static <K extends Comparable<? super K>, V> PersistentSortedMap<K, V> fromSorted(
+            final K[] keys, final V[] values, final int size)
+    {
+        return (size == 0) ? empty()
+                           : new PersistentSortedMap<>(build(keys, values, 0, size));
+    }
+
+    /**
+     * Retrieve the number of entries in the map
+     *
+     * @return int - Number of entries
+     */
+    int size()
+    {
+        return size(root);
+    }
+
+    /**
+     * Determine whether the map has no entries
+     *
+     * @return boolean - true if the map is empty, false otherwise
+     */
+    boolean isEmpty()
+    {
+        return root == null;
+    }
+
+    /**
+     * Retrieve the value associated with a key
+     *
+     * @param key - Key to look up
+     *
+     * @return V - Value associated with the key or null
+     */
+    V get(final K key)
+    {
+        Node<K, V> node = root;
+
+        while (node != null)
+        {
+            final int c = key.compareTo(node.key);
+
+            if (c == 0)
+                return node.value;
+
+            node = (c < 0) ? node.left : node.right;
+        }
+
+        return null;
+    }
+
+    /**
+     * Retrieve the entry with the least key greater than or equal to a key
+     *
+     * @param key - Key to look up
+     *
+     * @return Map.Entry<K, V> - The entry found or null
+     */
+    Map.Entry<K, V> ceilingEntry(final K key)
+    {
+        Node<K, V> node = root;
+        Node<K, V> ceiling = null;
+
+        while (node != null)
+        {
+            final int c = key.compareTo(node.key);
+
+            if (c == 0)
+                return node;
+
+            if (c < 0)
+            {
+                ceiling = node;
+                node = node.left;
+            }
+            else
+                node = node.right;
+        }
+
+        return ceiling;
+    }
+
+    /**
+     * Produce a version of the map associating a key with a value
+     *
+     * @param key   - Key to associate
+     * @param value - Value to associate with the key
+     *
+     * @return PersistentSortedMap<K, V> - The updated version of the map
+     */
+    PersistentSortedMap<K, V> put(final K key, final V value)
+    {
+        final Node<K, V> updated = put(root, key, value);
+
+        return (updated == root) ? this : new PersistentSortedMap<>(updated);
+    }
+
+    /**
+     * Produce a version of the map without a key
+     *
+     * @param key - Key to drop
+     *
+     * @return PersistentSortedMap<K, V> - The updated version of the map, or this
+     *                                     map if the key was absent
+     */
+    PersistentSortedMap<K, V> remove(final K key)
+    {
+        final Node<K, V> updated = remove(root, key);
+
+        return (updated == root) ? this : new PersistentSortedMap<>(updated);
+    }
+
+    /**
+     * Count the entries whose key precedes a key
+     *
+     * @param key - Key to count up to
+     *
+     * @return int - Number of entries with a smaller key
+     */
+    int rank(final K key)
+    {
+        Node<K, V> node = root;
+        int rank = 0;
+
+        while (node != null)
+        {
+            if (key.compareTo(node.key) <= 0)
+                node = node.left;
+            else
+            {
+                rank += size(node.left) + 1;
+                node = node.right;
+            }
+        }
+
+        return rank;
+    }
+
+    /**
+     * Retrieve the key at a position in key order
+     *
+     * @param index - Position of the key, from zero to size() - 1
+     *
+     * @return K - Key at the position
+     */
+    K keyAt(int index)
+    {
+        if (index < 0 || index >= size())
+            throw new IndexOutOfBoundsException("Index: " + index);
+
+        Node<K, V> node = root;
+
+        while (true)
+        {
+            final int left = size(node.left);
+
+            if (index == left)
+                return node.key;
+
+            if (index < left)
+                node = node.left;
+            else
+            {
+                index -= left + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    /**
+     * Iterate over every entry in key order
+     *
+     * @return Iterator<Map.Entry<K, V>> - Entries in key order
+     */
+    Iterator<Map.Entry<K, V>> iterator()
+    {
+        return iterator(null, true, null, false);
+    }
+
+    /**
+     * Iterate over the entries within a range of keys in key order, seeking to
+     * the start of the range in O(log n)
+     *
+     * @param from          - Lowest key of the range or null for no lower bound
+     * @param fromInclusive - Whether an entry keyed by from belongs to the range
+     * @param to            - Highest key of the range or null for no upper bound
+     * @param toInclusive   - Whether an entry keyed by to belongs to the range
+     *
+     * @return Iterator<Map.Entry<K, V>> - Entries within the range in key order
+     */
+    Iterator<Map.Entry<K, V>> iterator(final K from, final boolean fromInclusive,
+                                       final K to, final boolean toInclusive)
+    {
+        return new RangeIterator<>(root, from, fromInclusive, to, toInclusive);
+    }
+
+    private static int size(final Node<?, ?> node)
+    {
+        return (node == null) ? 0 : node.size;
+    }
+
+    private static int height(final Node<?, ?> node)
+    {
+        return (node == null) ? 0 : node.height;
+    }
+
+    /**
+     * Build a perfectly balanced tree from a sorted slice of entries
+     */
+    private static <K extends Comparable<? super K>, V> Node<K, V> build(
+            final K[] keys, final V[] values, final int from, final int to)
+    {
+        if (from >= to)
+            return null;
+
+        final int middle = (from + to) >>> 1;
+
+        return new Node<>(keys[middle], values[middle],
+                          build(keys, values, from, middle),
+                          build(keys, values, middle + 1, to));
+    }
+
+    private static <K extends Comparable<? super K>, V> Node<K, V> put(
+            final Node<K, V> node, final K key, final V value)
+    {
+        if (node == null)
+            return new Node<>(key, value, null, null);
+
+        final int c = key.compareTo(node.key);
+
+        if (c < 0)
+        {
+            final Node<K, V> left = put(node.left, key, value);
+
+            return (left == node.left) ? node
+                : balance(node.key, node.value, left, node.right);
+        }
+
+        if (c > 0)
+        {
+            final Node<K, V> right = put(node.right, key, value);
+
+            return (right == node.right) ? node
+                : balance(node.key, node.value, node.left, right);
+        }
+
+        return (value == node.value) ? node
+            : new Node<>(key, value, node.left, node.right);
+    }
+
+    private static <K extends Comparable<? super K>, V> Node<K, V> remove(
+            final Node<K, V> node, final K key)
+    {
+        if (node == null)
+            return null;
+
+        final int c = key.compareTo(node.key);
+
+        if (c < 0)
+        {
+            final Node<K, V> left = remove(node.left, key);
+
+            return (left == node.left) ? node
+                : balance(node.key, node.value, left, node.right);
+        }
+
+        if (c > 0)
+        {
+            final Node<K, V> right = remove(node.right, key);
+
+            return (right == node.right) ? node
+                : balance(node.key, node.value, node.left, right);
+        }
+
+        if (node.left == null)
+            return node.right;
+
+        if (node.right == null)
+            return node.left;
+
+        Node<K, V> successor = node.right;
+
+        while (successor.left != null)
+            successor = successor.left;
+
+        return balance(successor.key, successor.value, node.left,
+                       removeFirst(node.right));
+    }
+
+    private static <K extends Comparable<? super K>, V> Node<K, V> removeFirst(
+            final Node<K, V> node)
+    {
+        if (node.left == null)
+            return node.right;
+
+        return balance(node.key, node.value, removeFirst(node.left), node.right);
+    }
+
+    /**
+     * Build a node restoring the height balance of its subtrees, which may
+     * differ by at most two after a single update
+     */
+    private static <K extends Comparable<? super K>, V> Node<K, V> balance(
+            final K key, final V value, final Node<K, V> left, final Node<K, V> right)
+    {
+        final int leftHeight  = height(left);
+        final int rightHeight = height(right);
+
+        if (leftHeight > rightHeight + 1)
+        {
+            if (height(left.left) >= height(left.right))
+                return new Node<>(left.key, left.value, left.left,
+                                  new Node<>(key, value, left.right, right));
+
+            final Node<K, V> pivot = left.right;
+
+            return new Node<>(pivot.key, pivot.value,
+                              new Node<>(left.key, left.value, left.left, pivot.left),
+                              new Node<>(key, value, pivot.right, right));
+        }
+
+        if (rightHeight > leftHeight + 1)
+        {
+            if (height(right.right) >= height(right.left))
+                return new Node<>(right.key, right.value,
+                                  new Node<>(key, value, left, right.left), right.right);
+
+            final Node<K, V> pivot = right.left;
+
+            return new Node<>(pivot.key, pivot.value,
+                              new Node<>(key, value, left, pivot.left),
+                              new Node<>(right.key, right.value, pivot.right, right.right));
+        }
+
+        return new Node<>(key, value, left, right);
+    }
+
+    /**
+     * Immutable tree node which doubles as the map's entry type
+     */
+    private static final class Node<K, V> implements Map.Entry<K, V>
+    {
+        private final K key;
+        private final V value;
+        private final Node<K, V> left;
+        private final Node<K, V> right;
+        private final int height;
+        private final int size;
+
+        Node(final K key, final V value, final Node<K, V> left, final Node<K, V> right)
+        {
+            this.key    = key;
+            this.value  = value;
+            this.left   = left;
+            this.right  = right;
+            this.height = Math.max(height(left), height(right)) + 1;
+            this.size   = size(left) + size(right) + 1;
+        }
+
+        @Override
+        public K getKey()
+        {
+            return key;
+        }
+
+        @Override
+        public V getValue()
+        {
+            return value;
+        }
+
+        @Override
+        public V setValue(final V value)
+        {
+            throw new UnsupportedOperationException("Entries are immutable");
+        }
+    }
+
+    /**
+     * In-order iterator over a bounded range of a tree
+     */
+    private static final class RangeIterator<K extends Comparable<? super K>, V>
+        implements Iterator<Map.Entry<K, V>>
+    {
+        // Nodes whose entry and right subtree are still to be visited
+        private final Deque<Node<K, V>> pending = new ArrayDeque<>();
+
+        private final K to;
+        private final boolean toInclusive;
+
+        // Entry to return next, null when the range is exhausted
+        private Node<K, V> next;
+
+        RangeIterator(final Node<K, V> root, final K from, final boolean fromInclusive,
+                      final K to, final boolean toInclusive)
+        {
+            this.to          = to;
+            this.toInclusive = toInclusive;
+
+            Node<K, V> node = root;
+
+            while (node != null)
+            {
+                final int c = (from == null) ? 1 : node.key.compareTo(from);
+
+                if (c > 0 || (c == 0 && fromInclusive))
+                {
+                    pending.push(node);
+                    node = node.left;
+                }
+                else
+                    node = node.right;
+            }
+
+            advance();
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<K, V> next()
+        {
+            final Node<K, V> current = next;
+
+            if (current == null)
+                throw new NoSuchElementException();
+
+            advance();
+
+            return current;
+        }
+
+        private void advance()
+        {
+            next = pending.poll();
+
+            if (next == null)
+                return;
+
+            if (to != null)
+            {
+                final int c = next.key.compareTo(to);
+
+                if (c > 0 || (c == 0 && !toInclusive))
+                {
+                    next = null;
+                    pending.clear();
+                    return;
+                }
+            }
+
+            for (Node<K, V> node = next.right; node != null; node = node.left)
+                pending.push(node);
+        }
+    }
+
+}
@@ -14,6 +14,7 @@
  * limitations under the License.
  */
 
+
 /**
  * @author Rico Antonio Felix <ricoantoniofelix@yahoo.com>
  */
@@ -21,25 +22,89 @@
 package com.rico.felix.models;
 
 /*
- * Platform Dependency
+ * Platform Dependencies
  */
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/*
+ * Local Dependency
+ */
+import com.rico.felix.auxiliary.StringPool;
 
 /**
  * This class is used to model a generic person within the system.
  *
  * The fundamental information contained within an object of this type
  * includes a person's first and last names along with an e-mail address.
+ *
+ * The text fields of a person, those of the subclasses included, are packed
+ * into a single array: a count, the end offset of every field and then the
+ * fields themselves. A field is held as its UTF-8 bytes, or as the number of
+ * an equal value in the person's StringPool for the fields which repeat
+ * across people, and decoded only when a getter asks for it. A person thus costs
+ * one array rather than one string object per field.
+ *
+ * A person is immutable once created, as stored records are shared by
+ * every version of the directory retained; editing a record means storing
+ * an edited copy bearing the same serial.
  */
 public abstract class Person implements Serializable
 {
     // Field used for the serialization mechanism
     private static final long serialVersionUID = 4875771514949460706L;
 
-    // Fields for storing fundamental information for an object of this type
-    private String firstName;
-    private String lastName;
-    private String email;
+    // Fields of the serialized form, which predates the packed fields
+    private static final ObjectStreamField[] serialPersistentFields =
+    {
+        new ObjectStreamField("firstName", String.class),
+        new ObjectStreamField("lastName", String.class),
+        new ObjectStreamField("email", String.class),
+        new ObjectStreamField("serial", long.class)
+    };
+
+    // Positions of the fields within the packed fields
+    private static final int FIRST_NAME = 0;
+    private static final int LAST_NAME  = 1;
+    private static final int EMAIL      = 2;
+
+    /**
+     * Position of the first field of a subclass within the packed fields
+     */
+    protected static final int DETAILS = 3;
+
+    /**
+     * Line separator ending each line of the string representation
+     */
+    protected static final String NEWLINE = System.lineSeparator();
+
+    // Leading bytes of a field held by number in the pool and of a null
+    // field, neither of which occurs in UTF-8
+    private static final int POOLED = 0xFF;
+    private static final int ABSENT = 0xFE;
+
+    // Flag of the count marking offsets of four bytes rather than two
+    private static final int WIDE = 0x80;
+
+    // Encoding of a null field
+    private static final byte[] NULL_FIELD = { (byte) ABSENT };
+
+    // Text fields packed as described above
+    private byte[] fields;
+
+    // Tiebreaker distinguishing this person from others of the same name
+    private long serial;
+
+    // Key derived from the name and serial
+    private transient PersonKey key;
+
+    // Pool numbering the pooled fields, current when the fields were packed
+    private transient StringPool pool;
 
     /**
      * Parameterized constructor for an object of this type
@@ -50,31 +115,55 @@ public abstract class Person implements Serializable
      */
     public Person(final String firstName, final String lastName, final String email)
     {
-        this.firstName = firstName;
-        this.lastName  = lastName;
-        this.email     = email;
+        this(firstName, lastName, email, new String[0]);
     }
 
     /**
-     * Retrieve first name associated with an object of this type
+     * Parameterized constructor for an object of this type along with the
+     * fields of a subclass
      *
-     * @return String - First name associated with the object
+     * @param firstName - Person's first name
+     * @param lastName  - Person's last name
+     * @param email     - Person's email address
+     * @param details   - Text fields of the subclass from position DETAILS on
      */
-    public String getFirstName()
+    protected Person(final String firstName, final String lastName, final String email,
+            final String... details)
     {
-        return firstName;
+        this.pool   = StringPool.current();
+        this.fields = pack(pool, firstName, lastName, email, details);
+        this.serial = PersonKey.nextSerial();
+        this.key    = new PersonKey(firstName, lastName, serial);
     }
 
     /**
-     * Change the first name associated with an object of this type
+     * Parameterized constructor for an object of this type restoring a person
+     * previously persisted under a serial number, the serial being reserved
+     * once the person is stored in the directory
      *
-     * @param firstName - New first name to associate with the object
+     * @param firstName - Person's first name
+     * @param lastName  - Person's last name
+     * @param email     - Person's email address
+     * @param serial    - Serial number the person was persisted with
+     * @param details   - Text fields of the subclass from position DETAILS on
+     */
+    protected Person(final String firstName, final String lastName, final String email,
+            final long serial, final String... details)
+    {
+        this.pool   = StringPool.current();
+        this.fields = pack(pool, firstName, lastName, email, details);
+        this.serial = serial;
+        this.key    = new PersonKey(firstName, lastName, serial);
+    }
+
+    /**
+     * Retrieve first name associated with an object of this type
      *
-     * @return void
+     * @return String - First name associated with the object
      */
-    public void setFirstName(final String firstName)
+    public String getFirstName()
     {
-        this.firstName = firstName;
+        return field(FIRST_NAME);
     }
 
     /**
@@ -84,52 +173,139 @@ public abstract class Person implements Serializable
      */
     public String getLastName()
     {
-        return lastName;
+        return field(LAST_NAME);
+    }
+
+    /**
+     * Retrieve email address associated with an object of this type
+     *
+     * @return String - Email address associated with the object
+     */
+    public String getEmail()
+    {
+        return field(EMAIL);
     }
 
     /**
-     * Change the last name associated with an object of this type
+     * Retrieve a custom built key from this object which is designed
+     * to be usable within mapped data structures.
      *
-     * @param lastName - New last name to associate with the object
+     * The key is built once, a person never changing once created; a
+     * record is edited by storing an edited copy through
+     * Directory.updatePerson.
      *
-     * @return void
+     * @return PersonKey - Key to be usable with mapped data structures
      */
-    public void setLastName(final String lastName)
+    public PersonKey getKey()
     {
-        this.lastName = lastName;
+        return key;
     }
 
     /**
-     * Retrieve email address associated with an object of this type
+     * Decode a text field
      *
-     * @return String - Email address associated with the object
+     * @param index - Position of the field
+     *
+     * @return String - The field's value, or null if unset
      */
-    public String getEmail()
+    protected final String field(final int index)
     {
-        return email;
+        final byte[] packed = fields;
+
+        if (index >= countOf(packed))
+            return null;
+
+        final int start  = startOf(packed, index);
+        final int length = endOf(packed, index) - start;
+
+        if (length == 1 && (packed[start] & 0xFF) == ABSENT)
+            return null;
+
+        if (length == 3 && (packed[start] & 0xFF) == POOLED)
+            return pool.valueOf(((packed[start + 1] & 0xFF) << 8)
+                                | (packed[start + 2] & 0xFF));
+
+        return new String(packed, start, length, StandardCharsets.UTF_8);
     }
 
     /**
-     * Change the email address associated with an object of this type
+     * Change a text field, repacking the fields, which is meant for
+     * restoring an object from its serialized form
      *
-     * @param email - New email address to associate with the object
+     * @param index - Position of the field
+     * @param value - The field's new value or null
      *
      * @return void
      */
-    public void setEmail(final String email)
+    protected final void setField(final int index, final String value)
     {
-        this.email = email;
+        final byte[] packed = fields;
+        final int count = countOf(packed);
+        final byte[][] encoded = new byte[Math.max(count, index + 1)][];
+
+        for (int i = 0; i < encoded.length; ++i)
+        {
+            if (i == index)
+                encoded[i] = encode(pool, value, i != EMAIL);
+            else if (i < count)
+                encoded[i] = Arrays.copyOfRange(packed, startOf(packed, i), endOf(packed, i));
+            else
+                encoded[i] = NULL_FIELD;
+        }
+
+        fields = join(encoded);
     }
 
     /**
-     * Retrieve a custom built key from this object which is designed
-     * to be usable within mapped data structures.
+     * Restore an object of this type, handing a serial number to records
+     * written before serial numbers existed
+     *
+     * @param in - Stream to read the object from
+     *
+     * @return void
      *
-     * @return String - Key to be usable with mapped data structures
+     * @throws IOException            - If the stream cannot be read
+     * @throws ClassNotFoundException - If a class of the stream is unknown
      */
-    public String getKey()
+    private void readObject(final ObjectInputStream in)
+        throws IOException, ClassNotFoundException
     {
-        return (lastName + " " + firstName);
+        final ObjectInputStream.GetField persisted = in.readFields();
+        final String firstName = (String) persisted.get("firstName", null);
+        final String lastName  = (String) persisted.get("lastName", null);
+
+        pool   = StringPool.current();
+        fields = pack(pool, firstName, lastName, (String) persisted.get("email", null));
+        serial = persisted.get("serial", 0L);
+
+        if (serial == 0)
+            serial = PersonKey.nextSerial();
+        else
+            PersonKey.reserve(serial);
+
+        key = new PersonKey(firstName, lastName, serial);
+    }
+
+    /**
+     * Persist an object of this type in the serialized form predating the
+     * packed fields
+     *
+     * @param out - Stream to write the object to
+     *
+     * @return void
+     *
+     * @throws IOException - If the stream cannot be written
+     */
+    private void writeObject(final ObjectOutputStream out) throws IOException
+    {
+        final ObjectOutputStream.PutField persisted = out.putFields();
+
+        persisted.put("firstName", getFirstName());
+        persisted.put("lastName", getLastName());
+        persisted.put("email", getEmail());
+        persisted.put("serial", serial);
+
+        out.writeFields();
     }
 
     /**
@@ -138,11 +314,133 @@ public abstract class Person implements Serializable
      * @return String - String representation for this object
      */
     @Override
-    public String toString()
+    public final String toString()
+    {
+        final StringBuilder text = new StringBuilder(0x80);
+
+        render(text);
+
+        return text.toString();
+    }
+
+    /**
+     * Append the string representation of an object of this type
+     *
+     * @param text - Builder to append the representation to
+     *
+     * @return void
+     */
+    protected void render(final StringBuilder text)
+    {
+        text.append("Name: ").append(getFirstName()).append(' ').append(getLastName())
+            .append(NEWLINE)
+            .append("E-mail Address: ").append(getEmail()).append(NEWLINE);
+    }
+
+    /**
+     * Pack the fields of a person, pooling all but the e-mail address which
+     * hardly ever repeats
+     */
+    private static byte[] pack(final StringPool pool, final String firstName,
+                               final String lastName, final String email,
+                               final String... details)
+    {
+        final byte[][] encoded = new byte[DETAILS + details.length][];
+
+        encoded[FIRST_NAME] = encode(pool, firstName, true);
+        encoded[LAST_NAME]  = encode(pool, lastName, true);
+        encoded[EMAIL]      = encode(pool, email, false);
+
+        for (int i = 0; i < details.length; ++i)
+            encoded[DETAILS + i] = encode(pool, details[i], true);
+
+        return join(encoded);
+    }
+
+    /**
+     * Encode a field as the number of an equal pooled value if allowed and
+     * the pool takes it, or as UTF-8
+     */
+    private static byte[] encode(final StringPool pool, final String value,
+                                 final boolean pooled)
+    {
+        if (value == null)
+            return NULL_FIELD;
+
+        final int number = pooled ? pool.numberOf(value) : -1;
+
+        if (number >= 0)
+            return new byte[] { (byte) POOLED, (byte) (number >>> 8), (byte) number };
+
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Lay encoded fields out behind the count and their end offsets
+     */
+    private static byte[] join(final byte[][] encoded)
+    {
+        int length = 0;
+
+        for (byte[] field : encoded)
+            length += field.length;
+
+        final boolean wide  = 1 + 2 * encoded.length + length > 0xFFFF;
+        final int width     = wide ? Integer.BYTES : Character.BYTES;
+        final byte[] packed = new byte[1 + width * encoded.length + length];
+
+        packed[0] = (byte) (encoded.length | (wide ? WIDE : 0));
+
+        int end = 1 + width * encoded.length;
+
+        for (int i = 0; i < encoded.length; ++i)
+        {
+            System.arraycopy(encoded[i], 0, packed, end, encoded[i].length);
+            end += encoded[i].length;
+
+            for (int shift = 8 * (width - 1), at = 1 + width * i; shift >= 0; shift -= 8)
+                packed[at++] = (byte) (end >>> shift);
+        }
+
+        return packed;
+    }
+
+    /**
+     * Retrieve the number of packed fields
+     */
+    private static int countOf(final byte[] packed)
+    {
+        return (packed[0] & 0xFF) & ~WIDE;
+    }
+
+    /**
+     * Retrieve the offset of a packed field's first byte
+     */
+    private static int startOf(final byte[] packed, final int index)
+    {
+        return (index == 0) ? 1 + widthOf(packed) * countOf(packed) : endOf(packed, index - 1);
+    }
+
+    /**
+     * Retrieve the offset following a packed field's last byte
+     */
+    private static int endOf(final byte[] packed, final int index)
+    {
+        final int width = widthOf(packed);
+        int end = 0;
+
+        for (int at = 1 + width * index, last = at + width; at < last; ++at)
+            end = (end << 8) | (packed[at] & 0xFF);
+
+        return end;
+    }
+
+    /**
+     * Retrieve the number of bytes of each end offset
+     */
+    private static int widthOf(final byte[] packed)
     {
-        return String.format("Name: %s%nE-mail Address: %s%n",
-            (firstName + " " + lastName), email
-        );
+        return ((packed[0] & WIDE) != 0) ? Integer.BYTES : Character.BYTES;
     }
 
 }
@@ -0,0 +1,814 @@
+/*
+ * Copyright 2014-2015 Rico Antonio Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * @author Rico Antonio Felix <ricoantoniofelix@yahoo.com>
+ */
+
+package com.rico.felix.data;
+
+/*
+ * Platform Dependencies
+ */
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * Platform Dependencies
+ */
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/*
+ * Local Dependencies
+ */
+import com.rico.felix.models.Faculty;
+import com.rico.felix.models.Person;
+import com.rico.felix.models.PersonKey;
+import com.rico.felix.models.Staff;
+import com.rico.felix.models.Student;
+
+/**
+ * This class is used to encode records in a compact, versioned binary form.
+ *
+ * A file starts with a magic number, a format version and the record count.
+ * Each record is a type tag byte, whose high bit carries a faculty member's
+ * tenure, the serial number as a variable-length integer and the fields as
+ * UTF-8 bytes prefixed by their variable-length byte count plus one, zero
+ * standing for a missing field. Unlike Java serialization no class
+ * descriptors are stored and no name is stored twice.
+ *
+ * Since version 2 the records are followed by a trailer and the file ends
+ * with the highest serial number, the trailer's offset and the magic number
+ * again, so a mapped file can be searched without reading the records up
+ * front. Readers streaming the records simply stop before the trailer.
+ *
+ * Since version 3 the records of each member type are gathered in key order
+ * into blocks of about 16 KB, each followed by the lengths of its records,
+ * the offset of the lengths and the record count, compressed on its own
+ * with the deflate algorithm and prefixed by its compressed and uncompressed
+ * lengths. Rosters repeat class years, offices and e-mail domains over and
+ * over, which the compression takes out. The trailer lists, for every
+ * member type, the file offset, record count and first key of each block,
+ * so a lookup decompresses a single block rather than the whole file.
+ *
+ * Since version 4 the blocks of each member type are the leaves of a B+tree
+ * whose nodes follow the blocks, each aligned to and filling at most a 4 KB
+ * page unless a key is too long to fit. A node holds its level, its entry
+ * count and, per child, the child's file offset, its number of records and
+ * its first key, the children of the nodes at level zero being blocks. The
+ * trailer holds no more than the root's offset and the number of records of
+ * each member type, so a lookup reads one page per level and one block
+ * whatever the number of records.
+ *
+ * Segment files, holding the changes of a single save, share the header but
+ * may also hold removals, a distinct tag followed by the serial number and
+ * the removed record's name, and have no trailer.
+ */
+final class PersonCodec
+{
+    // Leading bytes of every encoded file, "RFDB" in ASCII
+    static final int MAGIC = 0x52464442;
+
+    // Version of the encoding written by this class
+    static final byte VERSION = 0x4;
+
+    // First version storing the records in compressed blocks
+    static final byte BLOCKED = 0x3;
+
+    // First version indexing the blocks with a tree of pages
+    static final byte INDEXED = 0x4;
+
+    // Bytes of a page of the block index, which nodes are aligned to
+    static final int PAGE_SIZE = 0x1000;
+
+    // Bytes of the footer closing a file, the highest serial number, the
+    // trailer's offset and the magic number
+    static final int FOOTER_SIZE = 0x10;
+
+    // Uncompressed bytes of records gathered into one block of a snapshot,
+    // kept small since a point lookup decompresses a whole block
+    static final int BLOCK_SIZE = 0x4000;
+
+    // Bytes preceding the compressed records of a block, both lengths
+    static final int BLOCK_HEADER = 0x8;
+
+    // Bytes closing a decompressed block, the offset of the record lengths
+    // and the record count
+    private static final int BLOCK_FOOTER = 0x8;
+
+    // Bytes opening a node of a block index, the level and the entry count
+    private static final int NODE_HEADER = 0x3;
+
+    // Largest number of entries a node of a block index may hold
+    private static final int MAXIMUM_ENTRIES = 0xFFFF;
+
+    // Type tags of the member types
+    private static final int STUDENT = 0x1;
+    private static final int STAFF   = 0x2;
+    private static final int FACULTY = 0x3;
+
+    // Tag of a removal within a segment file
+    private static final int REMOVED = 0x4;
+
+    // Bit of the type tag set for a tenured faculty member
+    private static final int TENURED = 0x80;
+
+    // Largest field deemed sane while decoding
+    private static final int MAXIMUM_FIELD = 0x10000;
+
+    // Largest uncompressed block deemed sane while decoding
+    private static final int MAXIMUM_BLOCK = 0x1000000;
+
+    /*
+     * Prevent instantiation
+     */
+    private PersonCodec()
+    {}
+
+    /**
+     * Write the header of an encoded file
+     *
+     * @param out   - Destination of the header
+     * @param count - Number of records following the header
+     *
+     * @return void
+     *
+     * @throws IOException - If the destination cannot be written
+     */
+    static void writeHeader(final DataOutput out, final int count) throws IOException
+    {
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        writeVarLong(out, count);
+    }
+
+    /**
+     * Read the header of an encoded file whose magic number was already read
+     *
+     * @param in - Source of the header
+     *
+     * @return int - Number of records following the header
+     *
+     * @throws IOException - If the source cannot be read or has an unknown version
+     */
+    static int readHeader(final DataInput in) throws IOException
+    {
+        final byte version = in.readByte();
+
+        if (version < 0x1 || version > VERSION)
+            throw new IOException("Unsupported record format version: " + version);
+
+        return (int) readVarLong(in);
+    }
+
+    /**
+     * Write the B+tree indexing the blocks of a member type, bottom level
+     * first, each node starting on a page boundary
+     *
+     * @param out    - Destination of the tree, positioned after the blocks
+     * @param blocks - The type's blocks in key order
+     *
+     * @return Block - Entry of the root locating it and counting the type's
+     *                 records, or null if there are no blocks
+     *
+     * @throws IOException - If the destination cannot be written
+     */
+    static Block writeIndex(final DataOutputStream out, final List<Block> blocks)
+        throws IOException
+    {
+        if (blocks.isEmpty())
+            return null;
+
+        final ByteArrayOutputStream node = new ByteArrayOutputStream(PAGE_SIZE);
+        final DataOutputStream entries = new DataOutputStream(node);
+        List<Block> level = blocks;
+        int depth = 0;
+
+        do
+        {
+            final List<Block> parents = new ArrayList<>(level.size() / 0x40 + 1);
+            int first = 0;
+
+            while (first < level.size())
+            {
+                node.reset();
+
+                int count = 0;
+                int records = 0;
+
+                // Fill the page, while taking at least two entries so the tree narrows
+                while (first + count < level.size() && count < MAXIMUM_ENTRIES)
+                {
+                    final int size = node.size();
+                    final Block entry = level.get(first + count);
+
+                    entries.writeInt(entry.offset);
+                    entries.writeInt(entry.count);
+                    writeKey(entries, entry.firstKey);
+
+                    if (count >= 2 && NODE_HEADER + node.size() > PAGE_SIZE)
+                    {
+                        truncate(node, size);
+                        break;
+                    }
+
+                    records += entry.count;
+                    ++count;
+                }
+
+                pad(out);
+
+                if (out.size() == Integer.MAX_VALUE)
+                    throw new IOException("Database too large for its block index");
+
+                parents.add(new Block(out.size(), records, level.get(first).firstKey));
+
+                out.writeByte(depth);
+                out.writeShort(count);
+                node.writeTo(out);
+
+                first += count;
+            }
+
+            level = parents;
+            ++depth;
+        }
+        while (level.size() > 1);
+
+        pad(out);
+
+        return level.get(0);
+    }
+
+    /**
+     * Read a node of a block index written by writeIndex
+     *
+     * @param in - Source of the node, positioned at its start
+     *
+     * @return Node - The node
+     *
+     * @throws IOException - If the source cannot be read or the node is corrupt
+     */
+    static Node readNode(final DataInput in) throws IOException
+    {
+        final int level = in.readUnsignedByte();
+        final int count = in.readUnsignedShort();
+
+        if (count == 0)
+            throw new IOException("Block index is corrupt");
+
+        final Block[] entries = new Block[count];
+
+        for (int i = 0; i < count; ++i)
+        {
+            final int offset  = in.readInt();
+            final int records = in.readInt();
+
+            if (offset < 0 || records < 0)
+                throw new IOException("Block index is corrupt");
+
+            entries[i] = new Block(offset, records, readStandaloneKey(in));
+        }
+
+        return new Node(level, entries);
+    }
+
+    /**
+     * Write the trailer and footer closing an encoded file
+     *
+     * @param out      - Destination of the trailer
+     * @param roots    - Per member type ordinal, the root of the type's block
+     *                   index or null if the type has no records
+     * @param serial   - Highest serial number of the records
+     * @param position - Offset of the trailer within the file
+     *
+     * @return void
+     *
+     * @throws IOException - If the destination cannot be written
+     */
+    static void writeTrailer(final DataOutput out, final List<Block> roots,
+                             final long serial, final int position) throws IOException
+    {
+        for (Block root : roots)
+        {
+            out.writeInt((root != null) ? root.offset : -1);
+            out.writeInt((root != null) ? root.count : 0);
+        }
+
+        out.writeLong(serial);
+        out.writeInt(position);
+        out.writeInt(MAGIC);
+    }
+
+    /**
+     * Read the roots of the block indexes listed by a trailer written by
+     * writeTrailer
+     *
+     * @param in    - Source of the trailer
+     * @param types - Number of member types
+     *
+     * @return List<Block> - Per member type ordinal, the root of the type's
+     *                       block index or null if the type has no records
+     *
+     * @throws IOException - If the source cannot be read or the trailer is corrupt
+     */
+    static List<Block> readTrailer(final DataInput in, final int types)
+        throws IOException
+    {
+        final List<Block> roots = new ArrayList<>(types);
+
+        for (int type = 0; type < types; ++type)
+        {
+            final int offset  = in.readInt();
+            final int records = in.readInt();
+
+            if (offset < -1 || records < 0 || (offset == -1) != (records == 0))
+                throw new IOException("Block index is corrupt");
+
+            roots.add((offset >= 0) ? new Block(offset, records, null) : null);
+        }
+
+        return roots;
+    }
+
+    /**
+     * Close a block of encoded records with their lengths, then compress it
+     * and write it prefixed by its compressed and uncompressed lengths
+     *
+     * @param out       - Destination of the block
+     * @param deflater  - Compressor to use, reset before returning
+     * @param records   - Encoded records, the lengths are appended to it
+     * @param positions - Position of every record within the block
+     * @param count     - Number of records
+     *
+     * @return void
+     *
+     * @throws IOException - If the destination cannot be written
+     */
+    static void writeBlock(final DataOutput out, final Deflater deflater,
+                           final ByteArrayOutputStream records, final int[] positions,
+                           final int count) throws IOException
+    {
+        final int end = records.size();
+        final DataOutputStream table = new DataOutputStream(records);
+
+        for (int i = 0; i < count; ++i)
+            writeVarLong(table, ((i + 1 < count) ? positions[i + 1] : end) - positions[i]);
+
+        table.writeInt(end);
+        table.writeInt(count);
+        table.flush();
+
+        final int length = records.size();
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 4 + 0x40);
+        final byte[] buffer = new byte[0x2000];
+
+        deflater.setInput(records.toByteArray(), 0, length);
+        deflater.finish();
+
+        while (!deflater.finished())
+            compressed.write(buffer, 0, deflater.deflate(buffer));
+
+        deflater.reset();
+
+        out.writeInt(compressed.size());
+        out.writeInt(length);
+        out.write(compressed.toByteArray());
+    }
+
+    /**
+     * Read and decompress a block written by writeBlock
+     *
+     * @param in - Source of the block
+     *
+     * @return byte[] - The block's records, positions and count
+     *
+     * @throws IOException - If the source cannot be read or the block is corrupt
+     */
+    static byte[] readBlock(final DataInput in) throws IOException
+    {
+        final int compressedLength = in.readInt();
+        final int length = in.readInt();
+
+        if (compressedLength < 0 || compressedLength > MAXIMUM_BLOCK)
+            throw new IOException("Block too long: " + compressedLength);
+
+        final byte[] compressed = new byte[compressedLength];
+
+        in.readFully(compressed);
+
+        return inflate(compressed, length);
+    }
+
+    /**
+     * Decompress the records of a block
+     *
+     * @param compressed - Compressed records of the block
+     * @param length     - Number of bytes of the uncompressed records
+     *
+     * @return byte[] - The block's records, positions and count
+     *
+     * @throws IOException - If the block is corrupt
+     */
+    static byte[] inflate(final byte[] compressed, final int length) throws IOException
+    {
+        if (length < 0 || length > MAXIMUM_BLOCK)
+            throw new IOException("Block too long: " + length);
+
+        final Inflater inflater = new Inflater();
+        final byte[] records = new byte[length];
+
+        try
+        {
+            inflater.setInput(compressed);
+
+            int inflated = 0;
+
+            while (inflated < length && !inflater.finished())
+            {
+                final int count = inflater.inflate(records, inflated, length - inflated);
+
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    throw new IOException("Block is truncated");
+
+                inflated += count;
+            }
+
+            if (inflated != length || !inflater.finished())
+                throw new IOException("Block length mismatch");
+
+            if (length < BLOCK_FOOTER || blockCount(records) < 0
+                    || tableOf(records) < 0 || tableOf(records) > length - BLOCK_FOOTER)
+                throw new IOException("Block is corrupt");
+
+            return records;
+        }
+        catch (DataFormatException dfe)
+        {
+            throw new IOException("Block is corrupt", dfe);
+        }
+        finally
+        {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Retrieve the number of records of a decompressed block
+     *
+     * @param block - The block's records and their lengths
+     *
+     * @return int - Number of records
+     */
+    static int blockCount(final byte[] block)
+    {
+        return ByteBuffer.wrap(block).getInt(block.length - Integer.BYTES);
+    }
+
+    /**
+     * Retrieve the positions of the records within a decompressed block
+     *
+     * @param block - The block's records and their lengths
+     *
+     * @return int[] - Position of every record's first byte
+     *
+     * @throws IOException - If the lengths are corrupt
+     */
+    static int[] blockPositions(final byte[] block) throws IOException
+    {
+        final int table = tableOf(block);
+        final int[] positions = new int[blockCount(block)];
+        final DataInputStream lengths = new DataInputStream(new ByteArrayInputStream(
+                                            block, table, block.length - BLOCK_FOOTER - table));
+        long position = 0;
+
+        for (int i = 0; i < positions.length; ++i)
+        {
+            positions[i] = (int) position;
+            position += readVarLong(lengths);
+
+            if (position > table)
+                throw new IOException("Block is corrupt");
+        }
+
+        return positions;
+    }
+
+    private static int tableOf(final byte[] block)
+    {
+        return ByteBuffer.wrap(block).getInt(block.length - BLOCK_FOOTER);
+    }
+
+    /**
+     * Decode only the key of a record
+     *
+     * @param in - Source of the record
+     *
+     * @return PersonKey - Key of the record
+     *
+     * @throws IOException - If the source cannot be read
+     */
+    static PersonKey readKey(final DataInput in) throws IOException
+    {
+        in.readUnsignedByte();
+
+        final long serial = readVarLong(in);
+        final String firstName = readString(in);
+
+        return new PersonKey(firstName, readString(in), serial);
+    }
+
+    /**
+     * Encode a record
+     *
+     * @param out    - Destination of the record
+     * @param person - Record to encode
+     *
+     * @return void
+     *
+     * @throws IOException - If the destination cannot be written
+     */
+    static void write(final DataOutput out, final Person person) throws IOException
+    {
+        if (person instanceof Staff)
+        {
+            final Staff staff = (Staff) person;
+
+            out.writeByte(STAFF);
+            writeCommon(out, person);
+            writeString(out, staff.getTitle());
+            writeString(out, staff.getOffice());
+        }
+        else if (person instanceof Faculty)
+        {
+            final Faculty faculty = (Faculty) person;
+
+            out.writeByte(FACULTY | (faculty.isTenured() ? TENURED : 0));
+            writeCommon(out, person);
+            writeString(out, faculty.getOffice());
+        }
+        else
+        {
+            out.writeByte(STUDENT);
+            writeCommon(out, person);
+            writeString(out, ((Student) person).getClassTypeStatus());
+        }
+    }
+
+    /**
+     * Encode the removal of a record
+     *
+     * @param out - Destination of the removal
+     * @param key - Key of the removed record
+     *
+     * @return void
+     *
+     * @throws IOException - If the destination cannot be written
+     */
+    static void writeRemoval(final DataOutput out, final PersonKey key) throws IOException
+    {
+        out.writeByte(REMOVED);
+        writeKey(out, key);
+    }
+
+    /**
+     * Decode a record or a removal of a segment file
+     *
+     * @param in     - Source of the entry
+     * @param put    - Receiver of a decoded record
+     * @param remove - Receiver of the key of a decoded removal
+     *
+     * @return void
+     *
+     * @throws IOException - If the source cannot be read or holds no valid entry
+     */
+    static void readEntry(final DataInput in, final Consumer<? super Person> put,
+                          final Consumer<? super PersonKey> remove) throws IOException
+    {
+        final int tag = in.readUnsignedByte();
+
+        if (tag == REMOVED)
+            remove.accept(readStandaloneKey(in));
+        else
+            put.accept(read(in, tag));
+    }
+
+    /**
+     * Decode a record
+     *
+     * @param in - Source of the record
+     *
+     * @return Person - The decoded record
+     *
+     * @throws IOException - If the source cannot be read or holds no valid record
+     */
+    static Person read(final DataInput in) throws IOException
+    {
+        return read(in, in.readUnsignedByte());
+    }
+
+    private static Person read(final DataInput in, final int tag) throws IOException
+    {
+        final long serial = readVarLong(in);
+        final String firstName = readString(in);
+        final String lastName  = readString(in);
+        final String email     = readString(in);
+
+        switch (tag & ~TENURED)
+        {
+            case STAFF:
+                final String title = readString(in);
+                return new Staff(title, firstName, lastName, email, readString(in), serial);
+
+            case FACULTY:
+                return new Faculty(firstName, lastName, email, (tag & TENURED) != 0,
+                                   readString(in), serial);
+
+            case STUDENT:
+                return new Student(firstName, lastName, email, readString(in), serial);
+
+            default:
+                throw new IOException("Unknown member type tag: " + tag);
+        }
+    }
+
+    /**
+     * Encode a key on its own, as the serial number and the name
+     */
+    private static void writeKey(final DataOutput out, final PersonKey key)
+        throws IOException
+    {
+        writeVarLong(out, key.getSerial());
+        writeString(out, key.getName());
+    }
+
+    private static PersonKey readStandaloneKey(final DataInput in) throws IOException
+    {
+        final long serial = readVarLong(in);
+
+        return PersonKey.of(readString(in), serial);
+    }
+
+    /**
+     * Pad the destination with zeros up to the next page boundary
+     */
+    private static void pad(final DataOutputStream out) throws IOException
+    {
+        final int remainder = out.size() % PAGE_SIZE;
+
+        if (remainder != 0)
+            out.write(new byte[PAGE_SIZE - remainder]);
+    }
+
+    /**
+     * Drop the bytes written to a buffer past a length
+     */
+    private static void truncate(final ByteArrayOutputStream buffer, final int length)
+    {
+        final byte[] kept = Arrays.copyOf(buffer.toByteArray(), length);
+
+        buffer.reset();
+        buffer.write(kept, 0, length);
+    }
+
+    private static void writeCommon(final DataOutput out, final Person person)
+        throws IOException
+    {
+        writeVarLong(out, person.getKey().getSerial());
+        writeString(out, person.getFirstName());
+        writeString(out, person.getLastName());
+        writeString(out, person.getEmail());
+    }
+
+    private static void writeString(final DataOutput out, final String value)
+        throws IOException
+    {
+        if (value == null)
+        {
+            out.writeByte(0);
+            return;
+        }
+
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+        writeVarLong(out, bytes.length + 1L);
+        out.write(bytes);
+    }
+
+    private static String readString(final DataInput in) throws IOException
+    {
+        final long length = readVarLong(in) - 1;
+
+        if (length < 0)
+            return null;
+
+        if (length > MAXIMUM_FIELD)
+            throw new IOException("Field too long: " + length);
+
+        final byte[] bytes = new byte[(int) length];
+
+        in.readFully(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Write a non-negative integer seven bits at a time, least significant
+     * first, the high bit of each byte flagging that more follow
+     */
+    private static void writeVarLong(final DataOutput out, long value) throws IOException
+    {
+        while ((value & ~0x7FL) != 0)
+        {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(final DataInput in) throws IOException
+    {
+        long value = 0;
+
+        for (int shift = 0; shift < 64; shift += 7)
+        {
+            final int b = in.readUnsignedByte();
+
+            value |= (long) (b & 0x7F) << shift;
+
+            if ((b & 0x80) == 0)
+                return value;
+        }
+
+        throw new IOException("Malformed variable-length integer");
+    }
+
+    /**
+     * Entry of a block index, locating a block of records or a node of the
+     * index along with the records below it
+     */
+    static final class Block
+    {
+        // Offset of the block or node within the file
+        final int offset;
+
+        // Number of records within the block or below the node
+        final int count;
+
+        // Key of the first record within the block or below the node
+        final PersonKey firstKey;
+
+        Block(final int offset, final int count, final PersonKey firstKey)
+        {
+            this.offset   = offset;
+            this.count    = count;
+            this.firstKey = firstKey;
+        }
+    }
+
+    /**
+     * Node of a block index
+     */
+    static final class Node
+    {
+        // Height above the blocks, zero when the entries locate blocks
+        final int level;
+
+        // Children in key order
+        final Block[] entries;
+
+        Node(final int level, final Block[] entries)
+        {
+            this.level   = level;
+            this.entries = entries;
+        }
+    }
+
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2014-2015 Rico Antonio Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * @author Rico Antonio Felix <ricoantoniofelix@yahoo.com>
+ */
+
+package com.rico.felix.models;
+
+/*
+ * Platform Dependency
+ */
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class is used as the immutable identifier of a person within mapped
+ * data structures.
+ *
+ * A key orders people by name, encoded once as the last name, a space and the
+ * first name, and then by a serial number handed out to every person on
+ * creation, so people sharing a name coexist under distinct keys. The hash
+ * is computed up front, so comparing, hashing and looking up a key never
+ * allocates.
+ */
+public final class PersonKey implements Comparable<PersonKey>
+{
+    // Source of serial numbers, seeded from the clock so that serials of
+    // different sessions rarely meet even before any records are restored
+    private static final AtomicLong serials =
+        new AtomicLong(System.currentTimeMillis() << 0x10);
+
+    // Largest serial number a person may be stored with, leaving half the
+    // range for the serials handed out after it
+    public static final long MAX_SERIAL = Long.MAX_VALUE >> 1;
+
+    // Name in key order followed by the tiebreaker among equal names
+    private final String name;
+    private final long serial;
+
+    // Hash of the key computed on construction
+    private final int hash;
+
+    /**
+     * Parameterized constructor for an object of this type
+     *
+     * @param firstName - Person's first name
+     * @param lastName  - Person's last name
+     * @param serial    - Serial number distinguishing people of the same name
+     */
+    public PersonKey(final String firstName, final String lastName, final long serial)
+    {
+        this(lastName + " " + firstName, serial);
+    }
+
+    /**
+     * Parameterized constructor for an object of this type
+     *
+     * @param name   - Last name, a space and first name
+     * @param serial - Serial number distinguishing people of the same name
+     */
+    private PersonKey(final String name, final long serial)
+    {
+        this.name   = name;
+        this.serial = serial;
+        this.hash   = 31 * name.hashCode() + Long.hashCode(serial);
+    }
+
+    /**
+     * Retrieve the key of a person with a name and a serial number, as read
+     * back from storage
+     *
+     * @param name   - Last name, a space and first name
+     * @param serial - Serial number distinguishing people of the same name
+     *
+     * @return PersonKey - The key
+     */
+    public static PersonKey of(final String name, final long serial)
+    {
+        return new PersonKey(name, serial);
+    }
+
+    /**
+     * Retrieve the smallest key of any person with a name, inclusive lower
+     * bound for range queries over names
+     *
+     * @param name - Last name, a space and first name, or a prefix thereof
+     *
+     * @return PersonKey - Key ordered before every key with the name
+     */
+    public static PersonKey lowerBound(final String name)
+    {
+        return new PersonKey(name, Long.MIN_VALUE);
+    }
+
+    /**
+     * Retrieve the largest key of any person with a name, inclusive upper
+     * bound for range queries over names
+     *
+     * @param name - Last name, a space and first name
+     *
+     * @return PersonKey - Key ordered after every key with the name
+     */
+    public static PersonKey upperBound(final String name)
+    {
+        return new PersonKey(name, Long.MAX_VALUE);
+    }
+
+    /**
+     * Hand out a serial number no other person of this session holds
+     *
+     * @return long - Fresh serial number
+     */
+    static long nextSerial()
+    {
+        return serials.incrementAndGet();
+    }
+
+    /**
+     * Make sure serial numbers handed out later exceed one read back from
+     * storage or stored in the directory
+     *
+     * @param serial - Serial number held by a restored or stored person
+     *
+     * @return void
+     */
+    public static void reserve(final long serial)
+    {
+        serials.accumulateAndGet(serial, Math::max);
+    }
+
+    /**
+     * Retrieve the name encoded within this key
+     *
+     * @return String - Last name, a space and first name
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Retrieve the tiebreaker among people of the same name
+     *
+     * @return long - Serial number of the person
+     */
+    public long getSerial()
+    {
+        return serial;
+    }
+
+    @Override
+    public int compareTo(final PersonKey other)
+    {
+        final int byName = name.compareTo(other.name);
+
+        return (byName != 0) ? byName : Long.compare(serial, other.serial);
+    }
+
+    @Override
+    public boolean equals(final Object other)
+    {
+        if (this == other)
+            return true;
+
+        if (!(other instanceof PersonKey))
+            return false;
+
+        final PersonKey key = (PersonKey) other;
+
+        return hash == key.hash && serial == key.serial && name.equals(key.name);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return hash;
+    }
+
+    /**
+     * Retrieve the string representation of an object of this type
+     *
+     * @return String - The name encoded within this key
+     */
+    @Override
+    public String toString()
+    {
+        return name;
+    }
+
+}
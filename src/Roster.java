@@ -0,0 +1,970 @@
+/*
+ * Copyright 2014-2015 Rico Antonio Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * @author Rico Antonio Felix <ricoantoniofelix@yahoo.com>
+ */
+
+package com.rico.felix.data;
+
+/*
+ * Platform Dependencies
+ */
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+
+/*
+ * Platform Dependencies
+ */
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Platform Dependencies
+ */
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+/*
+ * Platform Dependencies
+ */
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * Local Dependencies
+ */
+import com.rico.felix.models.Faculty;
+import com.rico.felix.models.Person;
+import com.rico.felix.models.Staff;
+import com.rico.felix.models.Student;
+
+/*
+ * Local Dependency
+ */
+import com.rico.felix.auxiliary.MemberTypes;
+
+/**
+ * This class is used to move the directory's records in and out of CSV and
+ * JSON Lines files, the format following the file's extension.
+ *
+ * Both formats hold one record per row with the columns type, serial,
+ * firstName, lastName, email, classType, title, office and tenured, columns
+ * not applying to the record's member type being left empty. A CSV file
+ * starts with a header naming its columns in any order, while every JSON
+ * Lines row is an object keyed by the column names. A row without a serial
+ * is added under a new one. A record is keyed by its name and serial, so a
+ * row with a serial replaces the record saved under the same name and
+ * serial and an exported file imports back into the same records, while a
+ * row whose name was edited since the export is added next to the record it
+ * came from. A serial beyond PersonKey.MAX_SERIAL refuses its row.
+ *
+ * Importing reads the file through a channel, hands chunks of rows to worker
+ * threads for parsing and adds the parsed chunks to the directory in file
+ * order. Only a few chunks are in flight at once, so reading waits for the
+ * workers rather than filling the heap with the file. Exporting writes a
+ * snapshot of the directory, so edits carry on while the file is written.
+ */
+public final class Roster
+{
+    /*
+     * Prevent instantiation
+     */
+    private Roster()
+    {}
+
+    // Size of the buffers between the files and their channels
+    private static final int BUFFER_SIZE = 0x10000;
+
+    // Longest CSV row accepted, bounding how far an unbalanced quote runs on
+    private static final int MAX_ROW_LENGTH = 0x10000;
+
+    // Rows parsed and added to the directory together
+    private static final int CHUNK_ROWS = 0x4000;
+
+    // Threads parsing rows, and chunks read ahead of the one being added
+    private static final int WORKERS =
+        Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    private static final int IN_FLIGHT = WORKERS * 2;
+
+    // Columns of a row in the order they are exported
+    private static final String[] COLUMNS = {
+        "type", "serial", "firstName", "lastName", "email",
+        "classType", "title", "office", "tenured"
+    };
+
+    // Positions of the columns within COLUMNS
+    private static final int TYPE       = 0;
+    private static final int SERIAL     = 1;
+    private static final int FIRST_NAME = 2;
+    private static final int LAST_NAME  = 3;
+    private static final int EMAIL      = 4;
+    private static final int CLASS_TYPE = 5;
+    private static final int TITLE      = 6;
+    private static final int OFFICE     = 7;
+    private static final int TENURED    = 8;
+
+    // Thread running the transfers requested through importAsync and exportAsync
+    private static final ExecutorService transfers = Executors.newSingleThreadExecutor(task -> {
+        final Thread thread = new Thread(task, "Roster Transfer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Add the records of a CSV or JSON Lines file to the directory
+     *
+     * @param file - File ending in .csv, or in .jsonl, .ndjson or .json
+     *
+     * @return BulkLoadResult - Number of records added and the rows refused,
+     *                          positioned by their order within the file
+     *
+     * @throws IOException - If the file cannot be read
+     * @throws IllegalArgumentException - If the file's extension names no format
+     */
+    public static BulkLoadResult importFile(final Path file) throws IOException
+    {
+        final Format format = Format.of(file);
+
+        final ExecutorService parsers = Executors.newFixedThreadPool(WORKERS, task -> {
+            final Thread thread = new Thread(task, "Roster Parser");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        final ArrayDeque<Future<Chunk>> inFlight = new ArrayDeque<>(IN_FLIGHT);
+        final List<BulkLoadResult.Rejection> rejected = new ArrayList<>();
+        int added = 0;
+
+        try (BufferedReader reader = new BufferedReader(Channels.newReader(
+                 FileChannel.open(file, StandardOpenOption.READ),
+                 StandardCharsets.UTF_8.newDecoder(), BUFFER_SIZE), BUFFER_SIZE))
+        {
+            final int[] columns = format.readHeader(reader);
+            int position = 0;
+
+            for (;;)
+            {
+                final List<String> rows = new ArrayList<>(CHUNK_ROWS);
+                String row;
+
+                while (rows.size() < CHUNK_ROWS && (row = format.readRow(reader)) != null)
+                    rows.add(row);
+
+                if (rows.isEmpty())
+                    break;
+
+                final int first = position;
+
+                inFlight.add(parsers.submit(() -> parse(format, columns, rows, first)));
+                position += rows.size();
+
+                // The reader waits for the oldest chunk once enough are read ahead
+                if (inFlight.size() >= IN_FLIGHT)
+                    added += apply(inFlight.remove(), rejected);
+            }
+
+            while (!inFlight.isEmpty())
+                added += apply(inFlight.remove(), rejected);
+        }
+        finally
+        {
+            parsers.shutdownNow();
+        }
+
+        return new BulkLoadResult(added, rejected);
+    }
+
+    /**
+     * Add the records of a CSV or JSON Lines file to the directory without
+     * waiting for the import
+     *
+     * @param file - File ending in .csv, or in .jsonl, .ndjson or .json
+     *
+     * @return CompletableFuture<BulkLoadResult> - Completed with the outcome once
+     *                                             the import is done, or
+     *                                             exceptionally with the error met
+     */
+    public static CompletableFuture<BulkLoadResult> importAsync(final Path file)
+    {
+        final CompletableFuture<BulkLoadResult> request = new CompletableFuture<>();
+
+        transfers.execute(() -> {
+            try
+            {
+                request.complete(importFile(file));
+            }
+            catch (IOException | RuntimeException e)
+            {
+                request.completeExceptionally(e);
+            }
+        });
+
+        return request;
+    }
+
+    /**
+     * Write every record of the directory to a CSV or JSON Lines file in key
+     * order, replacing the file once complete
+     *
+     * @param file - File ending in .csv, or in .jsonl, .ndjson or .json
+     *
+     * @return int - Number of records written
+     *
+     * @throws IOException - If the file cannot be written
+     * @throws IllegalArgumentException - If the file's extension names no format
+     */
+    public static int exportFile(final Path file) throws IOException
+    {
+        final Format format = Format.of(file);
+        final Path pending = Paths.get(file.toString() + ".tmp");
+        final Iterator<Person> members = Directory.snapshot().getMembers().iterator();
+        final String[] values = new String[COLUMNS.length];
+        int count = 0;
+
+        try (Writer writer = new BufferedWriter(Channels.newWriter(
+                 FileChannel.open(pending, StandardOpenOption.CREATE,
+                                  StandardOpenOption.WRITE,
+                                  StandardOpenOption.TRUNCATE_EXISTING),
+                 StandardCharsets.UTF_8.newEncoder(), BUFFER_SIZE), BUFFER_SIZE))
+        {
+            format.writeHeader(writer);
+
+            while (members.hasNext())
+            {
+                format.writeRow(writer, valuesOf(members.next(), values));
+                ++count;
+            }
+        }
+
+        Files.move(pending, file, StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+
+        return count;
+    }
+
+    /**
+     * Write every record of the directory to a CSV or JSON Lines file without
+     * waiting for the export
+     *
+     * @param file - File ending in .csv, or in .jsonl, .ndjson or .json
+     *
+     * @return CompletableFuture<Integer> - Completed with the number of records
+     *                                      written, or exceptionally with the
+     *                                      error met
+     */
+    public static CompletableFuture<Integer> exportAsync(final Path file)
+    {
+        final CompletableFuture<Integer> request = new CompletableFuture<>();
+
+        transfers.execute(() -> {
+            try
+            {
+                request.complete(exportFile(file));
+            }
+            catch (IOException | RuntimeException e)
+            {
+                request.completeExceptionally(e);
+            }
+        });
+
+        return request;
+    }
+
+    /**
+     * Parse a chunk of rows on a worker thread, a row failing to parse being
+     * kept as a null record along with the reason
+     */
+    private static Chunk parse(final Format format, final int[] columns,
+            final List<String> rows, final int first)
+    {
+        final Chunk chunk = new Chunk(first, rows.size());
+        final String[] values = new String[COLUMNS.length];
+
+        for (int i = 0; i < rows.size(); ++i)
+        {
+            try
+            {
+                Arrays.fill(values, null);
+                format.parseRow(rows.get(i), columns, values);
+                chunk.people.add(personOf(values));
+            }
+            catch (IllegalArgumentException iae)
+            {
+                chunk.people.add(null);
+                chunk.problems[i] = iae.getMessage();
+            }
+        }
+
+        return chunk;
+    }
+
+    /**
+     * Wait for a parsed chunk and add its records to the directory, collecting
+     * the refused rows
+     */
+    private static int apply(final Future<Chunk> pending,
+            final List<BulkLoadResult.Rejection> rejected) throws IOException
+    {
+        final Chunk chunk;
+
+        try
+        {
+            chunk = pending.get();
+        }
+        catch (InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted importing records");
+        }
+        catch (ExecutionException ee)
+        {
+            throw new IOException("Records could not be parsed", ee.getCause());
+        }
+
+        final BulkLoadResult result = Directory.addAll(chunk.people.stream());
+
+        for (BulkLoadResult.Rejection rejection : result.getRejected())
+        {
+            final String problem = chunk.problems[rejection.getPosition()];
+
+            rejected.add(new BulkLoadResult.Rejection(chunk.first + rejection.getPosition(),
+                             rejection.getPerson(),
+                             (problem != null) ? problem : rejection.getReason()));
+        }
+
+        return result.getAdded();
+    }
+
+    /**
+     * Build the record described by the values of a row's columns
+     */
+    private static Person personOf(final String[] values)
+    {
+        if (isEmpty(values[TYPE]))
+            throw new IllegalArgumentException("Missing type");
+
+        final MemberTypes type;
+
+        try
+        {
+            type = MemberTypes.valueOf(values[TYPE].trim().toUpperCase(Locale.ROOT));
+        }
+        catch (IllegalArgumentException iae)
+        {
+            throw new IllegalArgumentException("Unknown type: " + values[TYPE]);
+        }
+
+        final boolean restored = !isEmpty(values[SERIAL]);
+        final long serial;
+
+        try
+        {
+            serial = restored ? Long.parseLong(values[SERIAL].trim()) : 0;
+        }
+        catch (NumberFormatException nfe)
+        {
+            throw new IllegalArgumentException("Malformed serial: " + values[SERIAL]);
+        }
+
+        switch (type)
+        {
+            case STUDENT:
+                return restored
+                    ? new Student(values[FIRST_NAME], values[LAST_NAME], values[EMAIL],
+                                  values[CLASS_TYPE], serial)
+                    : new Student(values[FIRST_NAME], values[LAST_NAME], values[EMAIL],
+                                  values[CLASS_TYPE]);
+
+            case STAFF:
+                return restored
+                    ? new Staff(values[TITLE], values[FIRST_NAME], values[LAST_NAME],
+                                values[EMAIL], values[OFFICE], serial)
+                    : new Staff(values[TITLE], values[FIRST_NAME], values[LAST_NAME],
+                                values[EMAIL], values[OFFICE]);
+
+            default:
+                final boolean tenured = parseTenured(values[TENURED]);
+
+                return restored
+                    ? new Faculty(values[FIRST_NAME], values[LAST_NAME], values[EMAIL],
+                                  tenured, values[OFFICE], serial)
+                    : new Faculty(values[FIRST_NAME], values[LAST_NAME], values[EMAIL],
+                                  tenured, values[OFFICE]);
+        }
+    }
+
+    /**
+     * Fill the values of a row's columns from a record
+     */
+    private static String[] valuesOf(final Person person, final String[] values)
+    {
+        Arrays.fill(values, null);
+
+        values[TYPE]       = Directory.memberTypeOf(person).name().toLowerCase(Locale.ROOT);
+        values[SERIAL]     = Long.toString(person.getKey().getSerial());
+        values[FIRST_NAME] = person.getFirstName();
+        values[LAST_NAME]  = person.getLastName();
+        values[EMAIL]      = person.getEmail();
+
+        if (person instanceof Student)
+            values[CLASS_TYPE] = ((Student) person).getClassTypeStatus();
+        else if (person instanceof Staff)
+        {
+            values[TITLE]  = ((Staff) person).getTitle();
+            values[OFFICE] = ((Staff) person).getOffice();
+        }
+        else
+        {
+            values[TENURED] = Boolean.toString(((Faculty) person).isTenured());
+            values[OFFICE]  = ((Faculty) person).getOffice();
+        }
+
+        return values;
+    }
+
+    private static boolean parseTenured(final String value)
+    {
+        if (isEmpty(value))
+            return false;
+
+        switch (value.trim().toLowerCase(Locale.ROOT))
+        {
+            case "true":
+            case "yes":
+                return true;
+
+            case "false":
+            case "no":
+                return false;
+
+            default:
+                throw new IllegalArgumentException("Malformed tenured: " + value);
+        }
+    }
+
+    private static boolean isEmpty(final String value)
+    {
+        return value == null || value.trim().isEmpty();
+    }
+
+    /**
+     * Locate a column by name, ignoring case
+     */
+    private static int columnOf(final String name)
+    {
+        for (int i = 0; i < COLUMNS.length; ++i)
+            if (COLUMNS[i].equalsIgnoreCase(name.trim()))
+                return i;
+
+        return -1;
+    }
+
+    /**
+     * This class is used to hold a chunk of parsed rows until it is added to
+     * the directory.
+     */
+    private static final class Chunk
+    {
+        // Position of the chunk's first row within the file
+        private final int first;
+
+        // Records parsed, null where a row failed to parse
+        private final List<Person> people;
+
+        // Reasons rows failed to parse, null where they parsed
+        private final String[] problems;
+
+        private Chunk(final int first, final int rows)
+        {
+            this.first    = first;
+            this.people   = new ArrayList<>(rows);
+            this.problems = new String[rows];
+        }
+    }
+
+    /**
+     * This enum is used to read and write the rows of the supported formats.
+     */
+    private enum Format
+    {
+        CSV
+        {
+            @Override
+            int[] readHeader(final BufferedReader reader) throws IOException
+            {
+                final String header = readRow(reader);
+
+                if (header == null)
+                    return new int[0];
+
+                final List<String> names = split(header);
+                final int[] columns = new int[names.size()];
+
+                for (int i = 0; i < columns.length; ++i)
+                    columns[i] = columnOf(names.get(i));
+
+                return columns;
+            }
+
+            @Override
+            String readRow(final BufferedReader reader) throws IOException
+            {
+                String line;
+
+                do
+                {
+                    line = reader.readLine();
+                }
+                while (line != null && line.trim().isEmpty());
+
+                if (line == null)
+                    return null;
+
+                // A quoted value may hold line breaks, so the row runs on
+                // until its quotes balance, or until it grows too long for
+                // parseRow to accept it
+                StringBuilder row = null;
+                boolean open = !balanced(line);
+
+                while (open && (row != null ? row.length() : line.length()) <= MAX_ROW_LENGTH)
+                {
+                    final String next = reader.readLine();
+
+                    if (next == null)
+                        break;
+
+                    if (row == null)
+                        row = new StringBuilder(line);
+
+                    row.append('\n').append(next);
+                    open ^= !balanced(next);
+                }
+
+                return (row != null) ? row.toString() : line;
+            }
+
+            @Override
+            void parseRow(final String row, final int[] columns, final String[] values)
+            {
+                if (row.length() > MAX_ROW_LENGTH)
+                    throw new IllegalArgumentException("Row longer than " + MAX_ROW_LENGTH
+                                                       + " characters");
+
+                final List<String> fields = split(row);
+
+                if (fields.size() > columns.length)
+                    throw new IllegalArgumentException("More values than columns");
+
+                for (int i = 0; i < fields.size(); ++i)
+                    if (columns[i] >= 0 && !fields.get(i).isEmpty())
+                        values[columns[i]] = fields.get(i);
+            }
+
+            @Override
+            void writeHeader(final Writer writer) throws IOException
+            {
+                writeRow(writer, COLUMNS);
+            }
+
+            @Override
+            void writeRow(final Writer writer, final String[] values) throws IOException
+            {
+                for (int i = 0; i < values.length; ++i)
+                {
+                    if (i > 0)
+                        writer.write(',');
+
+                    if (values[i] != null)
+                        writeValue(writer, values[i]);
+                }
+
+                writer.write('\n');
+            }
+
+            private void writeValue(final Writer writer, final String value)
+                throws IOException
+            {
+                boolean quoted = value.isEmpty();
+
+                for (int i = 0; i < value.length() && !quoted; ++i)
+                {
+                    final char c = value.charAt(i);
+                    quoted = c == ',' || c == '"' || c == '\n' || c == '\r';
+                }
+
+                if (!quoted)
+                {
+                    writer.write(value);
+                    return;
+                }
+
+                writer.write('"');
+                writer.write(value.replace("\"", "\"\""));
+                writer.write('"');
+            }
+
+            private boolean balanced(final CharSequence row)
+            {
+                int quotes = 0;
+
+                for (int i = 0; i < row.length(); ++i)
+                    if (row.charAt(i) == '"')
+                        ++quotes;
+
+                return quotes % 2 == 0;
+            }
+
+            private List<String> split(final String row)
+            {
+                final List<String> fields = new ArrayList<>(COLUMNS.length);
+                final StringBuilder field = new StringBuilder();
+                boolean quoted = false;
+
+                for (int i = 0; i < row.length(); ++i)
+                {
+                    final char c = row.charAt(i);
+
+                    if (quoted)
+                    {
+                        if (c != '"')
+                            field.append(c);
+                        else if (i + 1 < row.length() && row.charAt(i + 1) == '"')
+                            field.append(row.charAt(++i));
+                        else
+                            quoted = false;
+                    }
+                    else if (c == '"')
+                        quoted = true;
+                    else if (c == ',')
+                    {
+                        fields.add(field.toString());
+                        field.setLength(0);
+                    }
+                    else if (c != '\r')
+                        field.append(c);
+                }
+
+                if (quoted)
+                    throw new IllegalArgumentException("Unterminated quote");
+
+                fields.add(field.toString());
+
+                return fields;
+            }
+        },
+
+        JSON_LINES
+        {
+            @Override
+            int[] readHeader(final BufferedReader reader)
+            {
+                return null;
+            }
+
+            @Override
+            String readRow(final BufferedReader reader) throws IOException
+            {
+                String line;
+
+                do
+                {
+                    line = reader.readLine();
+                }
+                while (line != null && line.trim().isEmpty());
+
+                return line;
+            }
+
+            @Override
+            void parseRow(final String row, final int[] columns, final String[] values)
+            {
+                new JsonObject(row).parse(values);
+            }
+
+            @Override
+            void writeHeader(final Writer writer)
+            {}
+
+            @Override
+            void writeRow(final Writer writer, final String[] values) throws IOException
+            {
+                writer.write('{');
+
+                boolean first = true;
+
+                for (int i = 0; i < values.length; ++i)
+                {
+                    if (values[i] == null)
+                        continue;
+
+                    if (!first)
+                        writer.write(',');
+
+                    first = false;
+
+                    writeString(writer, COLUMNS[i]);
+                    writer.write(':');
+
+                    if (i == SERIAL || i == TENURED)
+                        writer.write(values[i]);
+                    else
+                        writeString(writer, values[i]);
+                }
+
+                writer.write("}\n");
+            }
+
+            private void writeString(final Writer writer, final String value)
+                throws IOException
+            {
+                writer.write('"');
+
+                for (int i = 0; i < value.length(); ++i)
+                {
+                    final char c = value.charAt(i);
+
+                    switch (c)
+                    {
+                        case '"':  writer.write("\\\""); break;
+                        case '\\': writer.write("\\\\"); break;
+                        case '\n': writer.write("\\n");  break;
+                        case '\r': writer.write("\\r");  break;
+                        case '\t': writer.write("\\t");  break;
+
+                        default:
+                            if (c < 0x20)
+                                writer.write(String.format("\\u%04x", (int) c));
+                            else
+                                writer.write(c);
+                    }
+                }
+
+                writer.write('"');
+            }
+        };
+
+        /**
+         * Determine the format of a file from its extension
+         */
+        static Format of(final Path file)
+        {
+            final String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+
+            if (name.endsWith(".csv"))
+                return CSV;
+
+            if (name.endsWith(".jsonl") || name.endsWith(".ndjson") || name.endsWith(".json"))
+                return JSON_LINES;
+
+            throw new IllegalArgumentException("Unsupported file type: " + file.getFileName());
+        }
+
+        /**
+         * Read whatever precedes the rows, returning the column of each field
+         * of a row or -1 for fields naming no column
+         */
+        abstract int[] readHeader(BufferedReader reader) throws IOException;
+
+        /**
+         * Read the text of the next row, or null at the end of the file
+         */
+        abstract String readRow(BufferedReader reader) throws IOException;
+
+        /**
+         * Parse the text of a row into the values of its columns
+         */
+        abstract void parseRow(String row, int[] columns, String[] values);
+
+        /**
+         * Write whatever precedes the rows
+         */
+        abstract void writeHeader(Writer writer) throws IOException;
+
+        /**
+         * Write a row holding the values of its columns, null values being omitted
+         */
+        abstract void writeRow(Writer writer, String[] values) throws IOException;
+    }
+
+    /**
+     * This class is used to parse a JSON object whose members hold strings,
+     * numbers, booleans or null.
+     */
+    private static final class JsonObject
+    {
+        private final String text;
+        private int position;
+
+        private JsonObject(final String text)
+        {
+            this.text = text;
+        }
+
+        /**
+         * Parse the object, storing the members naming a column
+         */
+        private void parse(final String[] values)
+        {
+            expect('{');
+
+            if (peek() == '}')
+                ++position;
+            else
+            {
+                for (;;)
+                {
+                    final String name = readString();
+                    expect(':');
+
+                    final String value = readValue();
+                    final int column = columnOf(name);
+
+                    if (column >= 0)
+                        values[column] = value;
+
+                    if (peek() == ',')
+                        ++position;
+                    else
+                    {
+                        expect('}');
+                        break;
+                    }
+                }
+            }
+
+            if (peek() != 0)
+                throw new IllegalArgumentException("Unexpected text after object");
+        }
+
+        private String readValue()
+        {
+            final char c = peek();
+
+            if (c == '"')
+                return readString();
+
+            final int start = position;
+
+            while (position < text.length() && ",} \t".indexOf(text.charAt(position)) < 0)
+                ++position;
+
+            final String literal = text.substring(start, position);
+
+            if (literal.equals("null"))
+                return null;
+
+            if (literal.equals("true") || literal.equals("false")
+                    || literal.matches("-?[0-9]+(\\.[0-9]+)?([eE][-+]?[0-9]+)?"))
+                return literal;
+
+            throw new IllegalArgumentException("Malformed JSON value at " + start);
+        }
+
+        private String readString()
+        {
+            expect('"');
+
+            final StringBuilder value = new StringBuilder();
+
+            while (position < text.length())
+            {
+                final char c = text.charAt(position++);
+
+                if (c == '"')
+                    return value.toString();
+
+                if (c != '\\')
+                {
+                    value.append(c);
+                    continue;
+                }
+
+                if (position >= text.length())
+                    break;
+
+                final char escaped = text.charAt(position++);
+
+                switch (escaped)
+                {
+                    case 'b': value.append('\b'); break;
+                    case 'f': value.append('\f'); break;
+                    case 'n': value.append('\n'); break;
+                    case 'r': value.append('\r'); break;
+                    case 't': value.append('\t'); break;
+
+                    case 'u':
+                        if (position + 4 > text.length())
+                            throw new IllegalArgumentException("Malformed JSON escape");
+
+                        try
+                        {
+                            value.append((char) Integer.parseInt(
+                                text.substring(position, position + 4), 16));
+                        }
+                        catch (NumberFormatException nfe)
+                        {
+                            throw new IllegalArgumentException("Malformed JSON escape");
+                        }
+
+                        position += 4;
+                        break;
+
+                    default:
+                        value.append(escaped);
+                }
+            }
+
+            throw new IllegalArgumentException("Unterminated JSON string");
+        }
+
+        private void expect(final char expected)
+        {
+            if (peek() != expected)
+                throw new IllegalArgumentException("Expected '" + expected
+                                                   + "' at " + position);
+            ++position;
+        }
+
+        /**
+         * Skip whitespace and retrieve the next character, or 0 at the end
+         */
+        private char peek()
+        {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position)))
+                ++position;
+
+            return (position < text.length()) ? text.charAt(position) : 0;
+        }
+    }
+
+}
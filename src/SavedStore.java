@@ -0,0 +1,133 @@
+/*
+ * Copyright 2014-2015 Rico Antonio Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * @author Rico Antonio Felix <ricoantoniofelix@yahoo.com>
+ */
+
+package com.rico.felix.data;
+
+/*
+ * Platform Dependencies
+ */
+import java.util.Iterator;
+import java.util.Map;
+
+/*
+ * Local Dependencies
+ */
+import com.rico.felix.models.Person;
+import com.rico.felix.models.PersonKey;
+
+/*
+ * Local Dependency
+ */
+import com.rico.felix.auxiliary.MemberTypes;
+
+/**
+ * This interface is used as a read-only view of saved records kept outside
+ * of record objects, which the partitions use as their base.
+ *
+ * A store hands out a record object only when a record is read, and hands
+ * out the same object again for as long as anybody holds on to it, so
+ * identity comparisons and the secondary indexes keep working.
+ */
+interface SavedStore
+{
+    /**
+     * Retrieve the records of a member type
+     *
+     * @param type - Member type of the records
+     *
+     * @return Section - The type's records in key order
+     */
+    Section section(MemberTypes type);
+
+    /**
+     * This interface is used to read the saved records of a single member
+     * type in key order, by key or by position.
+     */
+    interface Section
+    {
+        /**
+         * Retrieve the number of records
+         *
+         * @return int - Number of records
+         */
+        int size();
+
+        /**
+         * Retrieve the key of the record at a position in key order, which a
+         * store reads as saved without building the record
+         *
+         * @param index - Position of the record in key order
+         *
+         * @return PersonKey - The record's saved key
+         */
+        PersonKey keyAt(int index);
+
+        /**
+         * Retrieve the record at a position in key order
+         *
+         * @param index - Position of the record in key order
+         *
+         * @return Person - The record
+         */
+        Person recordAt(int index);
+
+        /**
+         * Count the records whose key precedes a key
+         *
+         * @param key - Key to rank
+         *
+         * @return int - Number of records with lesser keys
+         */
+        int rank(PersonKey key);
+
+        /**
+         * Determine whether a record is associated with a key
+         *
+         * @param key - Identifier of the Person
+         *
+         * @return boolean - true if a record is saved under the key, false otherwise
+         */
+        boolean contains(PersonKey key);
+
+        /**
+         * Retrieve the record associated with a key
+         *
+         * @param key - Identifier of the Person
+         *
+         * @return Person - The record or null
+         */
+        Person get(PersonKey key);
+
+        /**
+         * Iterate over the records within a range of keys in key order
+         *
+         * @param from          - Lowest key of the range or null for no lower bound
+         * @param fromInclusive - Whether a record keyed by from belongs to the range
+         * @param to            - Highest key of the range or null for no upper bound
+         * @param toInclusive   - Whether a record keyed by to belongs to the range
+         *
+         * @return Iterator<Map.Entry<PersonKey, Person>> - Records paired with
+         *                                                  their saved keys
+         */
+        Iterator<Map.Entry<PersonKey, Person>> iterator(PersonKey from, boolean fromInclusive,
+                                                        PersonKey to, boolean toInclusive);
+    }
+
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2014-2015 Rico Antonio Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * @author Rico Antonio Felix <ricoantoniofelix@yahoo.com>
+ */
+
+package com.rico.felix.data;
+
+/*
+ * Platform Dependencies
+ */
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+
+/*
+ * Platform Dependencies
+ */
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/*
+ * Local Dependencies
+ */
+import com.rico.felix.models.Person;
+import com.rico.felix.models.PersonKey;
+
+/*
+ * Local Dependency
+ */
+import com.rico.felix.auxiliary.MemberTypes;
+
+/**
+ * This class is used as an immutable version of the database's records.
+ *
+ * Every update of the database produces a new version sharing all untouched
+ * records with the previous one, so holding on to a version for saving,
+ * exporting or a long-running read costs neither time nor memory up front
+ * and never blocks writers. A version restored from a saved store decodes
+ * its records only when they are read.
+ */
+public final class Snapshot
+{
+    // Version of the database without any records
+    static final Snapshot EMPTY;
+
+    // One sorted partition per member type, indexed by the type's ordinal
+    private final Partition[] partitions;
+
+    /*
+     * Statically allocate the empty version's partitions
+     */
+    static
+    {
+        final Partition[] partitions = new Partition[MemberTypes.values().length];
+
+        Arrays.fill(partitions, Partition.EMPTY);
+
+        EMPTY = new Snapshot(partitions);
+    }
+
+    /**
+     * Parameterized constructor for an object of this type
+     *
+     * @param partitions - One sorted partition per member type
+     */
+    private Snapshot(final Partition[] partitions)
+    {
+        this.partitions = partitions;
+    }
+
+    /**
+     * Produce the version of the database held by a saved store
+     *
+     * @param store - The mapped or columnar store
+     *
+     * @return Snapshot - The saved version, its records decoded only when read
+     */
+    static Snapshot of(final SavedStore store)
+    {
+        final Partition[] partitions = new Partition[MemberTypes.values().length];
+
+        for (MemberTypes type : MemberTypes.values())
+            partitions[type.ordinal()] = Partition.of(store.section(type));
+
+        return new Snapshot(partitions);
+    }
+
+    /**
+     * Retrieve the number of records within this version
+     *
+     * @return int - Number of records
+     */
+    public int size()
+    {
+        int size = 0;
+
+        for (Partition partition : partitions)
+            size += partition.size();
+
+        return size;
+    }
+
+    /**
+     * Determine whether this version holds no records
+     *
+     * @return boolean - true if there are no records, false otherwise
+     */
+    public boolean isEmpty()
+    {
+        for (Partition partition : partitions)
+            if (!partition.isEmpty())
+                return false;
+
+        return true;
+    }
+
+    /**
+     * Retrieve a record from this version
+     *
+     * @param key - Identifier of the Person
+     *
+     * @return Person - Person object if located within this version or null
+     */
+    public Person retrievePerson(final PersonKey key)
+    {
+        for (Partition partition : partitions)
+        {
+            final Person person = partition.get(key);
+
+            if (person != null)
+                return person;
+        }
+
+        return null;
+    }
+
+    /**
+     * Retrieve the first record in key order with a name from this version
+     *
+     * @param name - Identifier which equates to the Person's name
+     *
+     * @return Person - Person object if located within this version or null
+     */
+    public Person retrievePerson(final String name)
+    {
+        final PersonKey lowest = PersonKey.lowerBound(name);
+        Map.Entry<PersonKey, Person> first = null;
+
+        for (Partition partition : partitions)
+        {
+            final Map.Entry<PersonKey, Person> entry = partition.ceilingEntry(lowest);
+
+            if (entry != null && entry.getKey().getName().equals(name)
+                    && (first == null || entry.getKey().compareTo(first.getKey()) < 0))
+                first = entry;
+        }
+
+        return (first != null) ? first.getValue() : null;
+    }
+
+    /**
+     * Retrieve every record of this version in key order
+     *
+     * @return Stream<Person> - All records merged across member types
+     */
+    public Stream<Person> getMembers()
+    {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * Retrieve the records of a specified member type in key order
+     *
+     * @param type - Member type of the records to retrieve
+     *
+     * @return Stream<Person> - The records of the specified member type
+     */
+    public Stream<Person> getMembers(final MemberTypes type)
+    {
+        return StreamSupport.stream(new KeyRangeSpliterator(
+                   Collections.singletonList(partition(type))), false);
+    }
+
+    /**
+     * Traverse every record of this version in key order, splitting evenly for
+     * parallel execution
+     *
+     * @return Spliterator<Person> - All records merged across member types
+     */
+    Spliterator<Person> spliterator()
+    {
+        return new KeyRangeSpliterator(Arrays.asList(partitions));
+    }
+
+    /**
+     * Iterate over a range of keys in every partition
+     *
+     * @param from          - Lowest key of the range or null for no lower bound
+     * @param fromInclusive - Whether a record keyed by from belongs to the range
+     * @param to            - Highest key of the range or null for no upper bound
+     * @param toInclusive   - Whether a record keyed by to belongs to the range
+     *
+     * @return List<Iterator<Map.Entry<PersonKey, Person>>> - One iterator per partition
+     */
+    List<Iterator<Map.Entry<PersonKey, Person>>> ranges(final PersonKey from,
+            final boolean fromInclusive, final PersonKey to, final boolean toInclusive)
+    {
+        final List<Iterator<Map.Entry<PersonKey, Person>>> ranges =
+            new ArrayList<>(partitions.length);
+
+        for (Partition partition : partitions)
+            ranges.add(partition.iterator(from, fromInclusive, to, toInclusive));
+
+        return ranges;
+    }
+
+    /**
+     * Retrieve the partition of a member type
+     *
+     * @param type - Member type of the partition
+     *
+     * @return Partition - The type's partition
+     */
+    Partition partition(final MemberTypes type)
+    {
+        return partitions[type.ordinal()];
+    }
+
+    /**
+     * Produce a version of the database with a member type's partition replaced
+     *
+     * @param type      - Member type of the partition
+     * @param partition - Replacement partition
+     *
+     * @return Snapshot - The updated version
+     */
+    Snapshot with(final MemberTypes type, final Partition partition)
+    {
+        if (partitions[type.ordinal()] == partition)
+            return this;
+
+        final Partition[] updated = partitions.clone();
+
+        updated[type.ordinal()] = partition;
+
+        return new Snapshot(updated);
+    }
+
+}
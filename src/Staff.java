@@ -20,6 +20,14 @@
 
 package com.rico.felix.models;
 
+/*
+ * Platform Dependencies
+ */
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
+
 /**
  * This class is used to model a staff member within the system.
  *
@@ -32,9 +40,16 @@ public final class Staff extends Person
     // Field used for the serialization mechanism
     private static final long serialVersionUID = -3968916956475875017L;
 
-    // Fields for storing fundamental information for an object of this type
-    private String title;
-    private String office;
+    // Fields of the serialized form, which predates the packed fields
+    private static final ObjectStreamField[] serialPersistentFields =
+    {
+        new ObjectStreamField("title", String.class),
+        new ObjectStreamField("office", String.class)
+    };
+
+    // Positions of the staff member's fields within the packed fields
+    private static final int TITLE  = DETAILS;
+    private static final int OFFICE = DETAILS + 1;
 
     /**
      * Parameterized constructor for an object of this type
@@ -48,9 +63,34 @@ public final class Staff extends Person
     public Staff(final String title, final String firstName, final String lastName,
           final String email, final String office)
     {
-        super(firstName, lastName, email);
-        this.title  = title;
-        this.office = office;
+        super(firstName, lastName, email, title, office);
+    }
+
+    /**
+     * Parameterized constructor for an object of this type restoring a staff
+     * member previously persisted under a serial number
+     *
+     * @param title     - Staff member's title
+     * @param firstName - Staff member's first name
+     * @param lastName  - Staff member's last name
+     * @param email     - Staff member's email address
+     * @param office    - Name of staff member's office
+     * @param serial    - Serial number the staff member was persisted with
+     */
+    public Staff(final String title, final String firstName, final String lastName,
+          final String email, final String office, final long serial)
+    {
+        super(firstName, lastName, email, serial, title, office);
+    }
+
+    /**
+     * Retrieve title associated with an object of this type
+     *
+     * @return String - Title associated with the object
+     */
+    public String getTitle()
+    {
+        return field(TITLE);
     }
 
     /**
@@ -60,35 +100,62 @@ public final class Staff extends Person
      */
     public String getOffice()
     {
-        return office;
+        return field(OFFICE);
     }
 
     /**
-     * Change the name of office associated with an object of this type
+     * Restore an object of this type from its serialized form
      *
-     * @param newOffice - New name of office to associate with the object
+     * @param in - Stream to read the object from
      *
      * @return void
+     *
+     * @throws IOException            - If the stream cannot be read
+     * @throws ClassNotFoundException - If a class of the stream is unknown
      */
-    public void setOffice(final String newOffice)
+    private void readObject(final ObjectInputStream in)
+        throws IOException, ClassNotFoundException
     {
-        office = newOffice;
+        final ObjectInputStream.GetField persisted = in.readFields();
+
+        setField(TITLE, (String) persisted.get("title", null));
+        setField(OFFICE, (String) persisted.get("office", null));
     }
 
     /**
-     * Retrieve the string representation of an object of this type
+     * Persist an object of this type in its serialized form
+     *
+     * @param out - Stream to write the object to
      *
-     * @return String - String representation for this object
+     * @return void
+     *
+     * @throws IOException - If the stream cannot be written
+     */
+    private void writeObject(final ObjectOutputStream out) throws IOException
+    {
+        final ObjectOutputStream.PutField persisted = out.putFields();
+
+        persisted.put("title", getTitle());
+        persisted.put("office", getOffice());
+
+        out.writeFields();
+    }
+
+    /**
+     * Append the string representation of an object of this type
+     *
+     * @param text - Builder to append the representation to
+     *
+     * @return void
      */
     @Override
-    public String toString()
+    protected void render(final StringBuilder text)
     {
-        return String.format(
-            "Staff Member Name: %s%nE-mail Address: %s%nOffice: %s%n%n",
-            (title + " " + getFirstName() + " " + getLastName()),
-            getEmail(),
-            office
-        );
+        text.append("Staff Member Name: ").append(getTitle()).append(' ')
+            .append(getFirstName()).append(' ').append(getLastName()).append(NEWLINE)
+            .append("E-mail Address: ").append(getEmail()).append(NEWLINE)
+            .append("Office: ").append(getOffice()).append(NEWLINE)
+            .append(NEWLINE);
     }
 
 }
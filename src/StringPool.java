@@ -0,0 +1,250 @@
+/*
+ * Copyright 2014-2015 Rico Antonio Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * @author Rico Antonio Felix <ricoantoniofelix@yahoo.com>
+ */
+
+package com.rico.felix.auxiliary;
+
+/*
+ * Platform Dependencies
+ */
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class is used to share one instance among equal strings of the
+ * attributes that repeat across records, such as names, class types, titles
+ * and offices, so that restoring or importing a million records keeps a
+ * handful of copies of "Freshman" rather than a million.
+ *
+ * Every pooled value is numbered, so a record can refer to a value by its
+ * number in two bytes, along with the pool which numbered it, rather than
+ * holding the value itself. Records are pooled into the current pool, which
+ * is replaced by a fresh one once it holds MAXIMUM_SIZE values or a restore
+ * of the directory begins. A replaced pool is reachable only through the
+ * records referring to it, so its values are released along with the last
+ * of those records rather than living as long as the application.
+ */
+public final class StringPool
+{
+    // Number of distinct values a pool holds before it is replaced, the
+    // numbers of the values fitting two bytes
+    public static final int MAXIMUM_SIZE = 0x10000;
+
+    // Estimated bytes of a string object apart from its characters, along
+    // with the header of the array holding them
+    private static final int STRING_OVERHEAD = 0x18 + 0x10;
+
+    // Statistics on the values handed to every pool
+    private static final LongAdder pools    = new LongAdder();
+    private static final LongAdder requests = new LongAdder();
+    private static final LongAdder shared   = new LongAdder();
+    private static final LongAdder saved    = new LongAdder();
+
+    // Pool new records are numbered against, declared after the statistics
+    // its construction counts in
+    private static final AtomicReference<StringPool> current =
+        new AtomicReference<>(new StringPool());
+
+    // Number of each pooled value and the values by number
+    private final ConcurrentMap<String, Integer> numbers = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<String> values =
+        new AtomicReferenceArray<>(MAXIMUM_SIZE);
+
+    /*
+     * Prevent instantiation other than through current and renew
+     */
+    private StringPool()
+    {
+        pools.increment();
+    }
+
+    /**
+     * Retrieve the pool new records are numbered against
+     *
+     * @return StringPool - The current pool
+     */
+    public static StringPool current()
+    {
+        return current.get();
+    }
+
+    /**
+     * Replace the current pool with a fresh one, meant for the start of a
+     * restore so that the values of the records it replaces go with them
+     *
+     * @return void
+     */
+    public static void renew()
+    {
+        current.set(new StringPool());
+    }
+
+    /**
+     * Retrieve the number of the instance within this pool equal to a value,
+     * pooling the value unless an equal one is pooled already or this pool
+     * is full, in which case a fresh pool takes its place as the current one
+     *
+     * @param value - The value or null
+     *
+     * @return int - Number of the pooled instance, or -1 if the value is
+     *               null or this pool is full
+     */
+    public int numberOf(final String value)
+    {
+        if (value == null)
+            return -1;
+
+        requests.increment();
+
+        Integer number = numbers.get(value);
+
+        if (number == null)
+        {
+            synchronized (numbers)
+            {
+                number = numbers.get(value);
+
+                if (number == null)
+                {
+                    final int fresh = numbers.size();
+
+                    if (fresh >= MAXIMUM_SIZE)
+                    {
+                        current.compareAndSet(this, new StringPool());
+                        return -1;
+                    }
+
+                    // The value is in place before its number is handed out
+                    values.set(fresh, value);
+                    numbers.put(value, fresh);
+
+                    return fresh;
+                }
+            }
+        }
+
+        final String pooled = values.get(number);
+
+        if (value != pooled)
+        {
+            shared.increment();
+            saved.add(footprint(value));
+        }
+
+        return number;
+    }
+
+    /**
+     * Retrieve a value of this pool by number
+     *
+     * @param number - Number of the value as handed out by numberOf
+     *
+     * @return String - The pooled value
+     */
+    public String valueOf(final int number)
+    {
+        return values.get(number);
+    }
+
+    /**
+     * Retrieve the number of values handed to the pools
+     *
+     * @return long - Number of values handed to numberOf, nulls excluded
+     */
+    public static long requests()
+    {
+        return requests.sum();
+    }
+
+    /**
+     * Retrieve the number of values replaced by a pooled instance
+     *
+     * @return long - Number of copies the pools made redundant
+     */
+    public static long shared()
+    {
+        return shared.sum();
+    }
+
+    /**
+     * Retrieve an estimate of the heap the pools saved, counting each copy
+     * they made redundant as a string object along with its characters
+     *
+     * @return long - Estimated bytes saved
+     */
+    public static long bytesSaved()
+    {
+        return saved.sum();
+    }
+
+    /**
+     * Retrieve the number of distinct values within the current pool
+     *
+     * @return int - Number of values pooled since the current pool started
+     */
+    public static int size()
+    {
+        return current().numbers.size();
+    }
+
+    /**
+     * Retrieve the number of pools started, the current one included
+     *
+     * @return long - Number of pools started
+     */
+    public static long pools()
+    {
+        return pools.sum();
+    }
+
+    /**
+     * Retrieve a summary of the pools' statistics
+     *
+     * @return String - Values of the current pool, pools started, copies
+     *                  shared and bytes saved
+     */
+    public static String statistics()
+    {
+        return String.format("%d values in the current pool of %d started, "
+                             + "%d of %d copies shared, %d bytes saved",
+                             size(), pools(), shared(), requests(), bytesSaved());
+    }
+
+    /**
+     * Estimate the heap taken by a string, one byte per character if every
+     * character is Latin-1 and two otherwise, padded to eight bytes
+     */
+    private static long footprint(final String value)
+    {
+        int width = 1;
+
+        for (int i = 0; i < value.length(); ++i)
+            if (value.charAt(i) > 0xFF)
+            {
+                width = 2;
+                break;
+            }
+
+        return ((long) STRING_OVERHEAD + (long) value.length() * width + 7) & ~7L;
+    }
+
+}
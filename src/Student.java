@@ -20,6 +20,14 @@
 
 package com.rico.felix.models;
 
+/*
+ * Platform Dependencies
+ */
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
+
 /**
  * This class is used to model a student within the system.
  *
@@ -33,8 +41,14 @@ public final class Student extends Person
     // Field used for the serialization mechanism
     private static final long serialVersionUID = -8342165606041819467L;
 
-    // Field for storing student's seniority
-    private String classTypeStatus;
+    // Fields of the serialized form, which predates the packed fields
+    private static final ObjectStreamField[] serialPersistentFields =
+    {
+        new ObjectStreamField("classTypeStatus", String.class)
+    };
+
+    // Position of the student's seniority within the packed fields
+    private static final int CLASS_TYPE = DETAILS;
 
     /**
      * Parameterized constructor for an object of this type
@@ -47,21 +61,79 @@ public final class Student extends Person
     public Student(final String firstName, final String lastName, final String email,
             final String classTypeStatus)
     {
-        super(firstName, lastName, email);
-        this.classTypeStatus = classTypeStatus;
+        super(firstName, lastName, email, classTypeStatus);
+    }
+
+    /**
+     * Parameterized constructor for an object of this type restoring a
+     * student previously persisted under a serial number
+     *
+     * @param firstName       - Student's first name
+     * @param lastName        - Student's last name
+     * @param email           - Student's email address
+     * @param classTypeStatus - Student's seniority status
+     * @param serial          - Serial number the student was persisted with
+     */
+    public Student(final String firstName, final String lastName, final String email,
+            final String classTypeStatus, final long serial)
+    {
+        super(firstName, lastName, email, serial, classTypeStatus);
     }
 
     /**
-     * Retrieve the string representation of an object of this type
+     * Retrieve seniority status associated with an object of this type
+     *
+     * @return String - Seniority status associated with the object
+     */
+    public String getClassTypeStatus()
+    {
+        return field(CLASS_TYPE);
+    }
+
+    /**
+     * Restore an object of this type from its serialized form
+     *
+     * @param in - Stream to read the object from
+     *
+     * @return void
+     *
+     * @throws IOException            - If the stream cannot be read
+     * @throws ClassNotFoundException - If a class of the stream is unknown
+     */
+    private void readObject(final ObjectInputStream in)
+        throws IOException, ClassNotFoundException
+    {
+        setField(CLASS_TYPE, (String) in.readFields().get("classTypeStatus", null));
+    }
+
+    /**
+     * Persist an object of this type in its serialized form
+     *
+     * @param out - Stream to write the object to
+     *
+     * @return void
+     *
+     * @throws IOException - If the stream cannot be written
+     */
+    private void writeObject(final ObjectOutputStream out) throws IOException
+    {
+        out.putFields().put("classTypeStatus", getClassTypeStatus());
+        out.writeFields();
+    }
+
+    /**
+     * Append the string representation of an object of this type
+     *
+     * @param text - Builder to append the representation to
      *
-     * @return String - String representation for this object
+     * @return void
      */
     @Override
-    public String toString()
+    protected void render(final StringBuilder text)
     {
-        return String.format(
-            "Student " + super.toString() + "Class Type: %s%n%n",
-            classTypeStatus
-        );
+        text.append("Student ");
+        super.render(text);
+        text.append("Class Type: ").append(getClassTypeStatus()).append(NEWLINE)
+            .append(NEWLINE);
     }
 }
@@ -0,0 +1,574 @@
+/*
+ * Copyright 2014-2015 Rico Antonio Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * @author Rico Antonio Felix <ricoantoniofelix@yahoo.com>
+ */
+
+package com.rico.felix.data;
+
+/*
+ * Platform Dependencies
+ */
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * Platform Dependencies
+ */
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Platform Dependency
+ */
+import java.util.stream.IntStream;
+
+/*
+ * Local Dependency
+ */
+import com.rico.felix.models.Person;
+
+/**
+ * This class is used as a full-text index over the names, e-mail addresses
+ * and offices of the directory's records.
+ *
+ * Every field is lower-cased, padded with two leading and one trailing
+ * boundary character and cut into overlapping three character sequences.
+ * Each sequence maps to a sorted posting list of the ids of the records
+ * containing it, so a substring query only inspects the records sharing its
+ * rarest sequence and a misspelled query ranks records by the number of
+ * sequences they share.
+ */
+final class TrigramIndex
+{
+    // Character marking the boundaries of a field
+    private static final char BOUNDARY = '\u0000';
+
+    // Share of a query's sequences a record must contain to be deemed similar
+    private static final double SIMILARITY_THRESHOLD = 0.5;
+
+    // Odd multiplier spreading packed sequences across hash buckets, packed
+    // characters differ only in a few low bits which Long.hashCode folds away
+    private static final long SCRAMBLE = 0x9E3779B97F4A7C15L;
+
+    // Multiplicative inverse of SCRAMBLE modulo 2^64
+    private static final long UNSCRAMBLE = 0xF1DE83E19937733DL;
+
+    // Posting lists keyed by the scrambled, packed characters of a sequence
+    private final ConcurrentMap<Long, PostingList> postings = new ConcurrentHashMap<>();
+
+    // Ids standing in for the registered records within the posting lists
+    private final ConcurrentMap<Person, Integer> ids = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, Person> records = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+
+    /**
+     * Register a record's fields with the index
+     *
+     * @param person - Record to register
+     *
+     * @return void
+     */
+    void add(final Person person)
+    {
+        final int id = nextId.getAndIncrement();
+
+        if (ids.putIfAbsent(person, id) != null)
+            return;
+
+        records.put(id, person);
+
+        for (long trigram : trigramsOf(person))
+        {
+            postings.compute(trigram, (k, list) -> {
+                if (list == null)
+                    list = new PostingList();
+                list.add(id);
+                return list;
+            });
+        }
+    }
+
+    /**
+     * Register many records with the index at once, grouping the records by
+     * sequence first so that every posting list grows by a single append
+     *
+     * @param people - Records to register
+     *
+     * @return void
+     */
+    void addAll(final List<Person> people)
+    {
+        final int base = nextId.getAndAdd(people.size());
+
+        // Cutting the fields into sequences dominates and needs no coordination
+        final long[][] trigrams = new long[people.size()][];
+
+        IntStream.range(0, people.size()).parallel().forEach(i -> {
+            final Person person = people.get(i);
+
+            if (ids.putIfAbsent(person, base + i) == null)
+            {
+                records.put(base + i, person);
+                trigrams[i] = trigramsOf(person);
+            }
+        });
+
+        // Grouping in position order keeps every buffer in ascending order
+        final Map<Long, IdBuffer> grouped = new HashMap<>();
+
+        for (int i = 0; i < trigrams.length; ++i)
+        {
+            if (trigrams[i] == null)
+                continue;
+
+            for (long trigram : trigrams[i])
+                grouped.computeIfAbsent(trigram, k -> new IdBuffer()).add(base + i);
+        }
+
+        grouped.forEach((trigram, buffer) ->
+            postings.compute(trigram, (k, list) -> {
+                if (list == null)
+                    list = new PostingList();
+                list.addAll(buffer);
+                return list;
+            }));
+    }
+
+    /**
+     * Withdraw a record's fields from the index
+     *
+     * @param person - Record to withdraw
+     *
+     * @return void
+     */
+    void remove(final Person person)
+    {
+        final Integer id = ids.remove(person);
+
+        if (id == null)
+            return;
+
+        for (long trigram : trigramsOf(person))
+        {
+            postings.computeIfPresent(trigram, (k, list) -> {
+                list.remove(id);
+                return list.isEmpty() ? null : list;
+            });
+        }
+
+        records.remove(id);
+    }
+
+    /**
+     * Withdraw many records from the index at once, sweeping every affected
+     * posting list a single time
+     *
+     * @param people - Records to withdraw
+     *
+     * @return void
+     */
+    void removeAll(final List<Person> people)
+    {
+        final Map<Long, IdBuffer> grouped = new HashMap<>();
+        final List<Integer> withdrawn = new ArrayList<>();
+
+        for (Person person : people)
+        {
+            final Integer id = ids.remove(person);
+
+            if (id == null)
+                continue;
+
+            withdrawn.add(id);
+
+            for (long trigram : trigramsOf(person))
+                grouped.computeIfAbsent(trigram, k -> new IdBuffer()).add(id);
+        }
+
+        grouped.forEach((trigram, buffer) ->
+            postings.computeIfPresent(trigram, (k, list) -> {
+                list.removeAll(buffer);
+                return list.isEmpty() ? null : list;
+            }));
+
+        withdrawn.forEach(records::remove);
+    }
+
+    /**
+     * Withdraw every record from the index
+     *
+     * @return void
+     */
+    void clear()
+    {
+        postings.clear();
+        ids.clear();
+        records.clear();
+    }
+
+    /**
+     * Find the records with a field containing a piece of text, ignoring case
+     *
+     * @param text - Text to search for
+     *
+     * @return List<Person> - Records containing the text in no particular order
+     */
+    List<Person> containing(final String text)
+    {
+        final String needle = text.toLowerCase();
+        final List<Person> matches = new ArrayList<>();
+
+        if (needle.isEmpty())
+            return matches;
+
+        for (int id : candidatesContaining(needle))
+        {
+            final Person candidate = records.get(id);
+
+            if (candidate != null && contains(candidate, needle))
+                matches.add(candidate);
+        }
+
+        return matches;
+    }
+
+    /**
+     * Find the records with a field resembling a piece of text, tolerating
+     * typing errors, ranked by resemblance
+     *
+     * @param text - Text to search for
+     *
+     * @return List<Person> - Records resembling the text, closest first
+     */
+    List<Person> similarTo(final String text)
+    {
+        final long[] wanted = trigramsOf(text.toLowerCase());
+
+        final Map<Integer, Integer> shared = new HashMap<>();
+
+        for (long trigram : wanted)
+        {
+            final PostingList list = postings.get(trigram);
+
+            if (list != null)
+                for (int id : list.toArray())
+                    shared.merge(id, 1, Integer::sum);
+        }
+
+        final int required = (int) Math.ceil(wanted.length * SIMILARITY_THRESHOLD);
+        final Map<Person, Integer> scores = new HashMap<>();
+
+        shared.forEach((id, score) -> {
+            final Person person = records.get(id);
+
+            if (score >= required && person != null)
+                scores.put(person, score);
+        });
+
+        final List<Person> matches = new ArrayList<>(scores.keySet());
+
+        matches.sort((a, b) -> {
+            final int byScore = scores.get(b) - scores.get(a);
+            return (byScore != 0) ? byScore : a.getKey().compareTo(b.getKey());
+        });
+
+        return matches;
+    }
+
+    /**
+     * Collect the ids of the records which may contain a piece of text, a
+     * superset of the records actually containing it
+     *
+     * @param needle - Lower-cased text to search for
+     *
+     * @return int[] - Ids of the candidate records
+     */
+    private int[] candidatesContaining(final String needle)
+    {
+        // Text too short to form a sequence matches every sequence including it
+        if (needle.length() < 3)
+        {
+            final Set<Integer> candidates = new HashSet<>();
+
+            postings.forEach((trigram, list) -> {
+                if (unpack(trigram).contains(needle))
+                    for (int id : list.toArray())
+                        candidates.add(id);
+            });
+
+            return candidates.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        // Every match contains every sequence of the text, so the rarest
+        // sequence's posting list bounds the records worth verifying
+        PostingList rarest = null;
+
+        for (int i = 0; i + 3 <= needle.length(); ++i)
+        {
+            final PostingList list = postings.get(pack(needle.charAt(i),
+                                                       needle.charAt(i + 1),
+                                                       needle.charAt(i + 2)));
+
+            if (list == null)
+                return new int[0];
+
+            if (rarest == null || list.size() < rarest.size())
+                rarest = list;
+        }
+
+        return rarest.toArray();
+    }
+
+    /**
+     * Determine whether a field of a record contains a piece of text
+     *
+     * @param person - Record to inspect
+     * @param needle - Lower-cased text to search for
+     *
+     * @return boolean - true if a field contains the text, false otherwise
+     */
+    private static boolean contains(final Person person, final String needle)
+    {
+        for (String field : fieldsOf(person))
+            if (field != null && field.toLowerCase().contains(needle))
+                return true;
+
+        return false;
+    }
+
+    /**
+     * Collect the distinct sequences of every indexed field of a record
+     *
+     * @param person - Record to cut into sequences
+     *
+     * @return long[] - Packed sequences of the record in ascending order
+     */
+    private static long[] trigramsOf(final Person person)
+    {
+        final String[] fields = fieldsOf(person);
+
+        int count = 0;
+
+        for (String field : fields)
+            if (field != null)
+                count += field.length() + 1;
+
+        final long[] trigrams = new long[count];
+
+        count = 0;
+
+        for (String field : fields)
+            if (field != null)
+                count = addTrigrams(field.toLowerCase(), trigrams, count);
+
+        return distinct(trigrams, count);
+    }
+
+    /**
+     * Collect the distinct sequences of a single lower-cased piece of text
+     *
+     * @param field - Lower-cased text to cut into sequences
+     *
+     * @return long[] - Packed sequences of the text in ascending order
+     */
+    private static long[] trigramsOf(final String field)
+    {
+        final long[] trigrams = new long[field.length() + 1];
+
+        return distinct(trigrams, addTrigrams(field, trigrams, 0));
+    }
+
+    private static String[] fieldsOf(final Person person)
+    {
+        return new String[] { person.getFirstName(), person.getLastName(),
+                              person.getEmail(), Directory.officeOf(person) };
+    }
+
+    /**
+     * Cut a lower-cased field, padded with boundaries, into packed sequences
+     *
+     * @param field    - Lower-cased field
+     * @param trigrams - Array receiving the sequences
+     * @param count    - Position of the first free slot within the array
+     *
+     * @return int - Position of the first free slot after the field's sequences
+     */
+    private static int addTrigrams(final String field, final long[] trigrams, int count)
+    {
+        char first  = BOUNDARY;
+        char second = BOUNDARY;
+
+        for (int i = 0; i <= field.length(); ++i)
+        {
+            final char third = (i < field.length()) ? field.charAt(i) : BOUNDARY;
+
+            trigrams[count++] = pack(first, second, third);
+
+            first  = second;
+            second = third;
+        }
+
+        return count;
+    }
+
+    /**
+     * Sort and deduplicate the leading slots of an array of sequences
+     */
+    private static long[] distinct(final long[] trigrams, final int count)
+    {
+        Arrays.sort(trigrams, 0, count);
+
+        int kept = 0;
+
+        for (int i = 0; i < count; ++i)
+            if (kept == 0 || trigrams[kept - 1] != trigrams[i])
+                trigrams[kept++] = trigrams[i];
+
+        return Arrays.copyOf(trigrams, kept);
+    }
+
+    /**
+     * Pack the three characters of a sequence into a posting list key
+     */
+    private static long pack(final char first, final char second, final char third)
+    {
+        return (((long) first << 32) | ((long) second << 16) | third) * SCRAMBLE;
+    }
+
+    /**
+     * Recover the three characters of a sequence from its posting list key
+     */
+    private static String unpack(final long trigram)
+    {
+        final long packed = trigram * UNSCRAMBLE;
+
+        return new String(new char[] { (char) (packed >>> 32),
+                                       (char) (packed >>> 16),
+                                       (char) packed });
+    }
+
+    /**
+     * Sorted list of record ids sharing a sequence
+     */
+    private static final class PostingList
+    {
+        private int[] ids = new int[2];
+        private int size;
+
+        synchronized void add(final int id)
+        {
+            // Ids are handed out in ascending order so most land at the end
+            int position = (size == 0 || ids[size - 1] < id) ? size
+                         : Arrays.binarySearch(ids, 0, size, id);
+
+            if (position < 0)
+                position = -(position + 1);
+            else if (position < size)
+                return;
+
+            if (size == ids.length)
+                ids = Arrays.copyOf(ids, size + (size >> 1) + 1);
+
+            System.arraycopy(ids, position, ids, position + 1, size - position);
+            ids[position] = id;
+            ++size;
+        }
+
+        synchronized void addAll(final IdBuffer incoming)
+        {
+            if (size == 0 || ids[size - 1] < incoming.ids[0])
+            {
+                if (size + incoming.size > ids.length)
+                    ids = Arrays.copyOf(ids, size + incoming.size);
+
+                System.arraycopy(incoming.ids, 0, ids, size, incoming.size);
+                size += incoming.size;
+            }
+            else
+            {
+                for (int i = 0; i < incoming.size; ++i)
+                    add(incoming.ids[i]);
+            }
+        }
+
+        synchronized void remove(final int id)
+        {
+            final int position = Arrays.binarySearch(ids, 0, size, id);
+
+            if (position < 0)
+                return;
+
+            System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+            --size;
+        }
+
+        synchronized void removeAll(final IdBuffer outgoing)
+        {
+            final int[] doomed = Arrays.copyOf(outgoing.ids, outgoing.size);
+
+            Arrays.sort(doomed);
+
+            int kept = 0;
+
+            for (int i = 0; i < size; ++i)
+                if (Arrays.binarySearch(doomed, ids[i]) < 0)
+                    ids[kept++] = ids[i];
+
+            size = kept;
+        }
+
+        synchronized int size()
+        {
+            return size;
+        }
+
+        synchronized boolean isEmpty()
+        {
+            return size == 0;
+        }
+
+        synchronized int[] toArray()
+        {
+            return Arrays.copyOf(ids, size);
+        }
+    }
+
+    /**
+     * Growable list of ascending record ids gathered during a bulk registration
+     */
+    private static final class IdBuffer
+    {
+        private int[] ids = new int[4];
+        private int size;
+
+        void add(final int id)
+        {
+            if (size == ids.length)
+                ids = Arrays.copyOf(ids, size << 1);
+
+            ids[size++] = id;
+        }
+    }
+
+}
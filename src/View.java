@@ -37,11 +37,15 @@ import java.awt.event.WindowEvent;
 /*
  * Platform Dependency
  */
-import java.util.function.Predicate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
 
 /*
  * Platform Dependencies
  */
+import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JMenu;
 import javax.swing.JMenuBar;
@@ -53,25 +57,28 @@ import javax.swing.JTextArea;
 import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
 import javax.swing.UIManager.LookAndFeelInfo;
+import javax.swing.filechooser.FileNameExtensionFilter;
 
 /*
  * Local Dependencies
  */
 import com.rico.felix.models.Person;
-import com.rico.felix.models.Student;
-import com.rico.felix.models.Staff;
-import com.rico.felix.models.Faculty;
+import com.rico.felix.models.PersonKey;
 
 /*
  * Local Dependencies
  */
+import com.rico.felix.data.BulkLoadResult;
 import com.rico.felix.data.Database;
 import com.rico.felix.data.Directory;
+import com.rico.felix.data.Page;
+import com.rico.felix.data.Roster;
 
 /*
- * Local Dependency
+ * Local Dependencies
  */
 import com.rico.felix.auxiliary.MemberTypes;
+import com.rico.felix.auxiliary.StringPool;
 
 /**
  * This class is used as an interface between the user and the application
@@ -86,6 +93,9 @@ public final class View
     // File menu components
     private static JMenu fileMenu;
     private static JMenuItem save;
+    private static JMenuItem importRecords;
+    private static JMenuItem exportRecords;
+    private static JSeparator seperator0;
     private static JMenuItem exit;
 
     // Edit menu components
@@ -105,16 +115,46 @@ public final class View
     private static JMenuItem findStudents;
     private static JMenuItem findStaffMembers;
     private static JMenuItem findFacultyMembers;
+    private static JSeparator seperator3;
+    private static JMenuItem showNextPage;
 
     // Help menu components
     private static JMenu helpMenu;
     private static JMenuItem manual;
+    private static JMenuItem statistics;
     private static JMenuItem about;
 
     // Application interface's view-port and scrollbar
     private static JTextArea display;
     private static JScrollPane displayScrollPane;
 
+    // Number of records presented per page of a directory listing
+    private static final int PAGE_SIZE = 500;
+
+    // State of the listing currently presented in the view-port
+    private static String listingHeading;
+    private static BiFunction<PersonKey, Integer, Page> listing;
+    private static PersonKey continuationKey;
+    private static int pageNumber;
+
+    // Number of records whose rendered text is kept, a few pages' worth
+    private static final int CACHED_RENDERINGS = PAGE_SIZE * 4;
+
+    // Rendered text of the records listed most recently, in access order, so
+    // that listing the same pages again only copies it; a stored record never
+    // changes, so its text never goes stale
+    private static final Map<Person, String> renderings =
+        new LinkedHashMap<Person, String>(CACHED_RENDERINGS * 2, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Person, String> eldest)
+            {
+                return size() > CACHED_RENDERINGS;
+            }
+        };
+
     /*
      * Prevent instantiation from using conventional construction semantics
      */
@@ -143,8 +183,11 @@ public final class View
 
         // File menu components
         fileMenu = new JMenu("File");
-        save     = new JMenuItem("Save");
-        exit     = new JMenuItem("Exit");
+        save          = new JMenuItem("Save");
+        importRecords = new JMenuItem("Import...");
+        exportRecords = new JMenuItem("Export...");
+        seperator0    = new JSeparator();
+        exit          = new JMenuItem("Exit");
 
         // Edit menu components
         editMenu         = new JMenu("Edit");
@@ -163,11 +206,14 @@ public final class View
         findStudents       = new JMenuItem("Find Students");
         findStaffMembers   = new JMenuItem("Find Staff Members");
         findFacultyMembers = new JMenuItem("Find Faculty Members");
+        seperator3         = new JSeparator();
+        showNextPage       = new JMenuItem("Show Next Page");
 
         // Help menu components
         helpMenu = new JMenu("Help");
-        manual   = new JMenuItem("Manual");
-        about    = new JMenuItem("About");
+        manual     = new JMenuItem("Manual");
+        statistics = new JMenuItem("Statistics");
+        about      = new JMenuItem("About");
 
         // View-port
         display = new JTextArea();
@@ -201,6 +247,9 @@ public final class View
     private static void configureFileMenuLayout()
     {
         fileMenu.add(save);
+        fileMenu.add(importRecords);
+        fileMenu.add(exportRecords);
+        fileMenu.add(seperator0);
         fileMenu.add(exit);
     }
 
@@ -222,11 +271,16 @@ public final class View
         findMenu.add(findStudents);
         findMenu.add(findStaffMembers);
         findMenu.add(findFacultyMembers);
+        findMenu.add(seperator3);
+        findMenu.add(showNextPage);
+
+        showNextPage.setEnabled(false);
     }
 
     private static void configureHelpMenuLayout()
     {
         helpMenu.add(manual);
+        helpMenu.add(statistics);
         helpMenu.add(about);
     }
 
@@ -249,20 +303,102 @@ public final class View
     private static void configureFileMenuActionListeners()
     {
         configureSaveMenuActionListener();
+        configureImportMenuActionListener();
+        configureExportMenuActionListener();
         configureExitMenuActionListener();
     }
 
     private static void configureSaveMenuActionListener()
     {
         save.addActionListener(event -> {
-            Database.save();
-            display.setEditable(true);
-            display.replaceRange("Changes was saved successfully", 0,
-                                         display.getText().length());
-            display.setEditable(false);
+            showMessage("Saving changes...");
+
+            // The save is written in the background, edits carry on meanwhile
+            Database.saveAsync().whenComplete((done, failure) ->
+                SwingUtilities.invokeLater(() -> showMessage((failure == null)
+                    ? "Changes was saved successfully"
+                    : failure.getMessage())));
+        });
+    }
+
+    private static void configureImportMenuActionListener()
+    {
+        importRecords.addActionListener(event -> {
+            final JFileChooser chooser = rosterChooser();
+
+            if (chooser.showOpenDialog(frame) != JFileChooser.APPROVE_OPTION)
+                return;
+
+            showMessage("Importing records...");
+
+            // The file is read in the background, the records appear as added
+            Roster.importAsync(chooser.getSelectedFile().toPath()).whenComplete((result, failure) ->
+                SwingUtilities.invokeLater(() -> showMessage((failure == null)
+                    ? importReport(result)
+                    : "Records could not be imported: " + rootCause(failure).getMessage())));
+        });
+    }
+
+    private static void configureExportMenuActionListener()
+    {
+        exportRecords.addActionListener(event -> {
+            final JFileChooser chooser = rosterChooser();
+
+            if (chooser.showSaveDialog(frame) != JFileChooser.APPROVE_OPTION)
+                return;
+
+            showMessage("Exporting records...");
+
+            Roster.exportAsync(chooser.getSelectedFile().toPath()).whenComplete((count, failure) ->
+                SwingUtilities.invokeLater(() -> showMessage((failure == null)
+                    ? count + " records were exported"
+                    : "Records could not be exported: " + rootCause(failure).getMessage())));
         });
     }
 
+    private static JFileChooser rosterChooser()
+    {
+        final JFileChooser chooser = new JFileChooser();
+
+        chooser.setFileFilter(new FileNameExtensionFilter("CSV or JSON Lines",
+                                                          "csv", "jsonl", "ndjson", "json"));
+
+        return chooser;
+    }
+
+    private static String importReport(final BulkLoadResult result)
+    {
+        final StringBuilder report = new StringBuilder(result.getAdded() + " records were imported");
+        final List<BulkLoadResult.Rejection> rejected = result.getRejected();
+
+        if (!rejected.isEmpty())
+        {
+            report.append(", ").append(rejected.size()).append(" were refused:\n\n");
+
+            // The first few refusals suffice to locate a systematic problem
+            for (BulkLoadResult.Rejection rejection : rejected.subList(0,
+                     Math.min(rejected.size(), 0x64)))
+                report.append(rejection).append('\n');
+        }
+
+        return report.toString();
+    }
+
+    private static void showMessage(final String message)
+    {
+        display.setEditable(true);
+        display.replaceRange(message, 0, display.getText().length());
+        display.setEditable(false);
+    }
+
+    static Throwable rootCause(Throwable failure)
+    {
+        while (failure.getCause() != null)
+            failure = failure.getCause();
+
+        return failure;
+    }
+
     private static void configureExitMenuActionListener()
     {
         exit.addActionListener(event -> exitCloseOperation());
@@ -321,12 +457,13 @@ public final class View
         configureFindStudentActionListener();
         configureFindStaffMemberActionListener();
         configureFindFacultyMemberActionListener();
+        configureShowNextPageActionListener();
     }
 
     private static void configureShowAllActionListener()
     {
         showAll.addActionListener(
-            action(person -> person instanceof Person)
+            action(null)
         );
     }
 
@@ -340,49 +477,109 @@ public final class View
     private static void configureFindStudentActionListener()
     {
         findStudents.addActionListener(
-            action(person -> person instanceof Student)
+            action(MemberTypes.STUDENT)
         );
     }
 
     private static void configureFindStaffMemberActionListener()
     {
         findStaffMembers.addActionListener(
-            action(person -> person instanceof Staff)
+            action(MemberTypes.STAFF)
         );
     }
 
     private static void configureFindFacultyMemberActionListener()
     {
         findFacultyMembers.addActionListener(
-            action(person -> person instanceof Faculty)
+            action(MemberTypes.FACULTY)
         );
     }
 
-    private static ActionListener action(Predicate<Person> criteria)
+    private static void configureShowNextPageActionListener()
+    {
+        showNextPage.addActionListener(event -> {
+            if (!showPage())
+                emptyDirectoryNotification();
+        });
+    }
+
+    /**
+     * Method used to start a paged directory listing
+     *
+     * @param type - Member type to list, or null to list every member
+     */
+    private static ActionListener action(final MemberTypes type)
     {
         return event -> {
+            final boolean shown = (type == null)
+                ? showListing("Directory Listing", Directory::getMembersPage)
+                : showListing("Directory Listing",
+                              (key, size) -> Directory.getMembersPage(type, key, size));
+
+            if (!shown)
+                emptyDirectoryNotification();
+        };
+    }
+
+    /**
+     * Method used to start a paged listing of records and present its first
+     * page, Find > Show Next Page presenting the pages which follow
+     *
+     * @param heading - Title presented above every page of the listing
+     * @param pages   - Source of the page following a continuation key, given
+     *                  the continuation key and the page size
+     *
+     * @return boolean - true if the listing holds any record, false otherwise
+     */
+    static boolean showListing(final String heading,
+                               final BiFunction<PersonKey, Integer, Page> pages)
+    {
+        listingHeading  = heading;
+        listing         = pages;
+        continuationKey = null;
+        pageNumber      = 0;
 
-            StringBuilder information = new StringBuilder("");
+        return showPage();
+    }
 
-            Directory.getMemberInformation(criteria)
-                     .forEach(information::append);
+    /**
+     * Method used to present the next page of the current listing, only one
+     * page of records is held in the view-port at a time
+     *
+     * @return boolean - true if the page holds any record, false otherwise
+     */
+    private static boolean showPage()
+    {
+        final Page page = listing.apply(continuationKey, PAGE_SIZE);
 
-            if (information.length() != 0)
-            {
-                display.setEditable(true);
-                display.replaceRange("Directory Listing:\n\n" + information.toString(), 0,
-                                     display.getText().length());
-                display.setEditable(false);
-            }
-            else
-                emptyDirectoryNotification();
+        StringBuilder information = new StringBuilder("");
 
-        };
+        for (Person person : page.getRecords())
+            information.append(renderings.computeIfAbsent(person, Person::toString));
+
+        continuationKey = page.getContinuationKey();
+        showNextPage.setEnabled(page.hasNext());
+
+        if (information.length() == 0)
+            return false;
+
+        ++pageNumber;
+
+        display.setEditable(true);
+        display.replaceRange(listingHeading + " (Page " + pageNumber + "):\n\n"
+                             + information.toString()
+                             + (page.hasNext() ? "Find > Show Next Page for more\n" : ""),
+                             0, display.getText().length());
+        display.setEditable(false);
+        display.setCaretPosition(0);
+
+        return true;
     }
 
     private static void configureHelpMenuActionListeners()
     {
         configureManualActionListener();
+        configureStatisticsActionListener();
         configureAboutActionListener();
     }
 
@@ -394,6 +591,14 @@ public final class View
         });
     }
 
+    private static void configureStatisticsActionListener()
+    {
+        statistics.addActionListener(event -> {
+            JOptionPane.showMessageDialog(frame, "String pool: " + StringPool.statistics(),
+                                          "Statistics", JOptionPane.PLAIN_MESSAGE, null);
+        });
+    }
+
     private static void configureAboutActionListener()
     {
         about.addActionListener(event -> {
@@ -480,11 +685,25 @@ public final class View
 
         if (choice == 0)
         {
-            Database.save();
-            System.exit(0x0);
+            showMessage("Saving changes...");
+
+            // Terminate once the save, or any save already running, is on disk
+            Database.saveAsync().whenComplete((done, failure) ->
+                SwingUtilities.invokeLater(() -> {
+                    if (failure != null)
+                    {
+                        JOptionPane.showMessageDialog(frame, failure.getMessage(),
+                            "Save Error", JOptionPane.ERROR_MESSAGE);
+                        System.exit(-0x1);
+                    }
+                    System.exit(0x0);
+                }));
         }
         else
+        {
+            Database.discard();
             System.exit(0x0);
+        }
     }
 
     /**
@@ -498,6 +717,22 @@ public final class View
         new View();
     }
 
+    /**
+     * Method used to report the progress of loading the directory in the
+     * window's title, from any thread
+     *
+     * @param loaded   - Number of records loaded so far
+     * @param expected - Number of records expected in all
+     *
+     * @return void
+     */
+    public static void showLoadProgress(final int loaded, final int expected)
+    {
+        SwingUtilities.invokeLater(() -> frame.setTitle((loaded < expected)
+            ? "School Directory Database - Loading " + loaded + " of " + expected + " records"
+            : "School Directory Database"));
+    }
+
     /**
      * Method used for communication between the view and dialog box
      */
@@ -0,0 +1,714 @@
+/*
+ * Copyright 2014-2015 Rico Antonio Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * @author Rico Antonio Felix <ricoantoniofelix@yahoo.com>
+ */
+
+package com.rico.felix.data;
+
+/*
+ * Platform Dependencies
+ */
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+/*
+ * Platform Dependencies
+ */
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Platform Dependencies
+ */
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/*
+ * Local Dependencies
+ */
+import com.rico.felix.models.Faculty;
+import com.rico.felix.models.Person;
+import com.rico.felix.models.PersonKey;
+import com.rico.felix.models.Staff;
+import com.rico.felix.models.Student;
+
+/**
+ * This class is used as an append-only log of the directory's mutations, so
+ * that changes survive a crash without rewriting the whole database.
+ *
+ * Every mutation appends one small frame holding the payload's length, its
+ * CRC-32 checksum and the payload. A save moves the log aside once the
+ * changes are written elsewhere; quitting without saving truncates the log
+ * back to what it held when opened. Replaying stops at the first torn or
+ * corrupt frame, which is what a crash in the middle of an append leaves
+ * behind.
+ *
+ * Appended frames gather in memory until the sync policy calls for them to
+ * be forced to disk, at which point a single thread writes every frame
+ * gathered so far at once and forces them with one call. Under the commit
+ * policy each mutation waits for the force covering its frame, so mutations
+ * arriving while a force is under way share the next one.
+ *
+ * Should a group fail to reach the disk, every mutation waiting for it and
+ * every later append is refused with the error met, as the log can no longer
+ * vouch for them, until a save moves the log aside and starts afresh.
+ */
+final class WriteAheadLog implements Closeable
+{
+    // Operations recorded by the payloads, PUT being superseded by RECORD and
+    // the commit markers 0x3 of older logs being skipped
+    private static final byte PUT    = 0x1;
+    private static final byte REMOVE = 0x2;
+    private static final byte RECORD = 0x4;
+
+    // Member types of the records carried by PUT payloads
+    private static final byte STUDENT = 0x1;
+    private static final byte STAFF   = 0x2;
+    private static final byte FACULTY = 0x3;
+
+    // Bytes preceding every payload, its length and checksum
+    private static final int FRAME_HEADER = 0x8;
+
+    // Largest payload deemed sane while replaying
+    private static final int MAXIMUM_PAYLOAD = 0x100000;
+
+    // Size of the buffer the log is read through while replaying
+    private static final int REPLAY_BUFFER = 0x10000;
+
+    // Location of the log on disk
+    private final Path path;
+
+    // When appended frames are forced to disk
+    private final SyncPolicy policy;
+
+    // Channel appending to the log
+    private FileChannel channel;
+
+    // Frames appended but not yet written, and their number
+    private final ByteArrayOutputStream group = new ByteArrayOutputStream(0x1000);
+    private int groupRecords;
+
+    // Length of the log, of its part forced to disk and of its part present
+    // when it was opened
+    private long size;
+    private long durable;
+    private long committed;
+
+    // Whether a thread is writing and forcing a group of frames
+    private boolean syncing;
+
+    // Error met writing or forcing a group, whose frames may then be missing
+    // from the log; reported to every later append and force until a save
+    // rotates the log
+    private IOException failure;
+
+    // Thread forcing the log periodically under an interval policy, or null
+    private final ScheduledExecutorService syncer;
+
+    /**
+     * Parameterized constructor for an object of this type
+     *
+     * @param path   - Location of the log on disk
+     * @param size   - Length of the log's intact part, anything after it is cut off
+     * @param policy - When appended frames are forced to disk
+     *
+     * @throws IOException - If the log cannot be opened
+     */
+    WriteAheadLog(final Path path, final long size, final SyncPolicy policy)
+        throws IOException
+    {
+        this.path      = path;
+        this.policy    = policy;
+        this.channel   = FileChannel.open(path, StandardOpenOption.CREATE,
+                                          StandardOpenOption.WRITE);
+        this.size      = size;
+        this.durable   = size;
+        this.committed = size;
+
+        channel.truncate(size);
+        channel.position(size);
+
+        if (policy.interval > 0)
+        {
+            syncer = Executors.newSingleThreadScheduledExecutor(task -> {
+                final Thread thread = new Thread(task, "Log Syncer");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+            syncer.scheduleWithFixedDelay(this::syncQuietly, policy.interval,
+                                          policy.interval, TimeUnit.MILLISECONDS);
+        }
+        else
+            syncer = null;
+    }
+
+    /**
+     * Apply the intact frames of a log in order
+     *
+     * The log is streamed through a buffer a frame at a time, each frame's
+     * checksum being verified before its payload is applied, so replaying
+     * holds one frame in memory rather than the whole log.
+     *
+     * @param path   - Location of the log on disk
+     * @param put    - Receiver of every record stored
+     * @param remove - Receiver of the key of every record removed
+     *
+     * @return long - Length of the log's intact part, zero if there is no log
+     *
+     * @throws IOException - If the log cannot be read
+     */
+    static long replay(final Path path, final Consumer<? super Person> put,
+                       final Consumer<? super PersonKey> remove) throws IOException
+    {
+        if (!Files.exists(path))
+            return 0;
+
+        final CRC32 crc = new CRC32();
+        byte[] payload = new byte[0x100];
+        long position = 0;
+
+        try (DataInputStream frames = new DataInputStream(new BufferedInputStream(
+                 Files.newInputStream(path), REPLAY_BUFFER)))
+        {
+            for (;;)
+            {
+                final int length;
+                final int checksum;
+
+                try
+                {
+                    length   = frames.readInt();
+                    checksum = frames.readInt();
+
+                    if (length <= 0 || length > MAXIMUM_PAYLOAD)
+                        return position;
+
+                    if (length > payload.length)
+                        payload = new byte[Math.max(length, Math.min(payload.length * 2,
+                                                                     MAXIMUM_PAYLOAD))];
+
+                    frames.readFully(payload, 0, length);
+                }
+                catch (EOFException eof)
+                {
+                    // The log ends here, or with a frame cut short by a crash
+                    return position;
+                }
+
+                crc.reset();
+                crc.update(payload, 0, length);
+
+                if ((int) crc.getValue() != checksum)
+                    return position;
+
+                apply(new DataInputStream(new ByteArrayInputStream(payload, 0, length)),
+                      put, remove);
+
+                position += FRAME_HEADER + length;
+            }
+        }
+    }
+
+    /**
+     * Record that a record was stored, the record being on disk once sync
+     * returns for the position returned
+     *
+     * @param person - Record stored
+     *
+     * @return long - Length of the log up to and including the record
+     *
+     * @throws IOException - If the log cannot be written
+     */
+    synchronized long put(final Person person) throws IOException
+    {
+        final ByteArrayOutputStream payload = new ByteArrayOutputStream(0x80);
+        final DataOutputStream out = new DataOutputStream(payload);
+
+        out.writeByte(RECORD);
+        PersonCodec.write(out, person);
+
+        return append(payload.toByteArray());
+    }
+
+    /**
+     * Record that a record was removed, the removal being on disk once sync
+     * returns for the position returned
+     *
+     * @param person - Record removed
+     *
+     * @return long - Length of the log up to and including the removal
+     *
+     * @throws IOException - If the log cannot be written
+     */
+    synchronized long remove(final Person person) throws IOException
+    {
+        final ByteArrayOutputStream payload = new ByteArrayOutputStream(0x40);
+        final DataOutputStream out = new DataOutputStream(payload);
+
+        out.writeByte(REMOVE);
+        writeString(out, person.getFirstName());
+        writeString(out, person.getLastName());
+        out.writeLong(person.getKey().getSerial());
+
+        return append(payload.toByteArray());
+    }
+
+    /**
+     * Apply the sync policy to the frames appended up to a position, which
+     * under the commit policy means waiting until they are on disk
+     *
+     * @param position - Length of the log up to and including the last frame
+     *                   appended by the caller
+     *
+     * @return void
+     *
+     * @throws IOException - If the log cannot be written or forced
+     */
+    void sync(final long position) throws IOException
+    {
+        final boolean due;
+
+        synchronized (this)
+        {
+            due = policy.records > 0 && groupRecords >= policy.records;
+        }
+
+        if (policy == SyncPolicy.COMMIT || due)
+            force(position);
+    }
+
+    /**
+     * Drop the mutations recorded since the log was opened
+     *
+     * @return void
+     *
+     * @throws IOException - If the log cannot be truncated
+     */
+    synchronized void discard() throws IOException
+    {
+        awaitIdle();
+
+        group.reset();
+        groupRecords = 0;
+
+        channel.truncate(committed);
+        channel.position(committed);
+        channel.force(false);
+
+        size    = committed;
+        durable = committed;
+    }
+
+    /**
+     * Move the log aside and start an empty one in its place, the moved log
+     * holds exactly the mutations recorded before this call
+     *
+     * An archive left by a save which failed still holds changes no segment
+     * holds, so the log is then appended to it rather than replacing it.
+     *
+     * The save moving the log aside writes every change held in memory, so
+     * the fresh log is usable again after a failed force.
+     *
+     * @param archive - Location to move the log to
+     *
+     * @return void
+     *
+     * @throws IOException - If the log cannot be moved
+     */
+    synchronized void rotate(final Path archive) throws IOException
+    {
+        awaitIdle();
+        writeGroup();
+
+        channel.force(false);
+        channel.close();
+
+        if (Files.exists(archive))
+            appendTo(archive);
+        else
+            Files.move(path, archive);
+
+        channel   = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                                     StandardOpenOption.WRITE);
+        size      = 0;
+        durable   = 0;
+        committed = 0;
+        failure   = null;
+    }
+
+    /**
+     * Append the closed log to an archive behind the archive's intact frames
+     * and delete it, a crash before the deletion merely leaving frames which
+     * replay applies twice in the same order
+     *
+     * @param archive - Location of the archive
+     *
+     * @return void
+     *
+     * @throws IOException - If the archive cannot be written or the log read
+     */
+    private void appendTo(final Path archive) throws IOException
+    {
+        final long intact = replay(archive, person -> {}, key -> {});
+
+        try (FileChannel target = FileChannel.open(archive, StandardOpenOption.WRITE);
+             FileChannel source = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            // A torn frame would hide every frame appended behind it
+            target.truncate(intact);
+            target.position(intact);
+
+            final long length = source.size();
+            long copied = 0;
+
+            while (copied < length)
+                copied += source.transferTo(copied, length - copied, target);
+
+            target.force(false);
+        }
+
+        Files.delete(path);
+    }
+
+    /**
+     * Retrieve the length of the log
+     *
+     * @return long - Number of bytes in the log
+     */
+    synchronized long size()
+    {
+        return size;
+    }
+
+    @Override
+    public synchronized void close() throws IOException
+    {
+        if (syncer != null)
+            syncer.shutdown();
+
+        awaitIdle();
+        writeGroup();
+
+        channel.force(false);
+        channel.close();
+    }
+
+    /**
+     * Frame a payload and add it to the group of frames awaiting a write
+     */
+    private long append(final byte[] payload) throws IOException
+    {
+        checkFailure();
+
+        final CRC32 crc = new CRC32();
+
+        crc.update(payload);
+
+        final ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER + payload.length);
+
+        frame.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+
+        group.write(frame.array());
+        ++groupRecords;
+
+        size += FRAME_HEADER + payload.length;
+
+        return size;
+    }
+
+    /**
+     * Write and force every frame appended so far unless the frames up to a
+     * position are on disk already, the group being written outside the
+     * monitor so that further frames gather meanwhile for the next force
+     */
+    private void force(final long position) throws IOException
+    {
+        final ByteBuffer frames;
+        final long target;
+
+        synchronized (this)
+        {
+            awaitIdle();
+
+            if (durable >= position)
+                return;
+
+            // The frames up to the position went out with a failed group
+            checkFailure();
+
+            frames = ByteBuffer.wrap(group.toByteArray());
+            target = size;
+            syncing = true;
+
+            group.reset();
+            groupRecords = 0;
+        }
+
+        boolean forced = false;
+
+        try
+        {
+            while (frames.hasRemaining())
+                channel.write(frames);
+
+            channel.force(false);
+            forced = true;
+        }
+        catch (IOException ioe)
+        {
+            synchronized (this)
+            {
+                failure = ioe;
+            }
+
+            throw ioe;
+        }
+        finally
+        {
+            synchronized (this)
+            {
+                if (forced)
+                    durable = target;
+
+                syncing = false;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Force the frames appended so far as the periodic task of an interval
+     * policy, a failure being kept for the next append or force to report
+     */
+    private void syncQuietly()
+    {
+        try
+        {
+            final long position;
+
+            synchronized (this)
+            {
+                if (!channel.isOpen())
+                    return;
+
+                position = size;
+            }
+
+            force(position);
+        }
+        catch (IOException ioe)
+        {
+            // Kept by force, the mutations which follow are refused with it
+        }
+    }
+
+    /**
+     * Refuse to go on once a group failed to reach the disk, the caller
+     * holding the monitor
+     */
+    private void checkFailure() throws IOException
+    {
+        if (failure != null)
+            throw new IOException("Log failed to reach the disk: " + failure,
+                                  failure);
+    }
+
+    /**
+     * Write the frames appended so far without forcing them, the caller
+     * holding the monitor with no force under way
+     */
+    private void writeGroup() throws IOException
+    {
+        final ByteBuffer frames = ByteBuffer.wrap(group.toByteArray());
+
+        while (frames.hasRemaining())
+            channel.write(frames);
+
+        group.reset();
+        groupRecords = 0;
+    }
+
+    /**
+     * Wait for a force under way to finish, the caller holding the monitor
+     */
+    private void awaitIdle() throws IOException
+    {
+        while (syncing)
+        {
+            try
+            {
+                wait();
+            }
+            catch (InterruptedException ie)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for the log");
+            }
+        }
+    }
+
+    /**
+     * Apply a single payload
+     */
+    private static void apply(final DataInputStream in, final Consumer<? super Person> put,
+                              final Consumer<? super PersonKey> remove) throws IOException
+    {
+        final byte operation = in.readByte();
+
+        if (operation == RECORD || operation == PUT)
+        {
+            final Person person = (operation == RECORD) ? PersonCodec.read(in)
+                                                        : readPerson(in);
+
+            put.accept(person);
+        }
+        else if (operation == REMOVE)
+        {
+            final String firstName = readString(in);
+            final String lastName  = readString(in);
+
+            remove.accept(new PersonKey(firstName, lastName, in.readLong()));
+        }
+    }
+
+    /**
+     * Decode a record of a PUT payload, written by logs predating RECORD
+     */
+    private static Person readPerson(final DataInputStream in) throws IOException
+    {
+        final byte type = in.readByte();
+
+        final long serial = in.readLong();
+        final String firstName = readString(in);
+        final String lastName  = readString(in);
+        final String email     = readString(in);
+
+        switch (type)
+        {
+            case STAFF:
+                final String title = readString(in);
+                return new Staff(title, firstName, lastName, email, readString(in), serial);
+
+            case FACULTY:
+                final boolean tenured = in.readBoolean();
+                return new Faculty(firstName, lastName, email, tenured, readString(in), serial);
+
+            case STUDENT:
+                return new Student(firstName, lastName, email, readString(in), serial);
+
+            default:
+                throw new IOException("Unknown member type in log: " + type);
+        }
+    }
+
+    private static void writeString(final DataOutputStream out, final String value)
+        throws IOException
+    {
+        out.writeBoolean(value != null);
+
+        if (value != null)
+            out.writeUTF(value);
+    }
+
+    private static String readString(final DataInputStream in) throws IOException
+    {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * Policy deciding when appended frames are forced to disk, trading the
+     * changes a power failure may cost against the forces paid per change
+     */
+    static final class SyncPolicy
+    {
+        // Force before every mutation returns, concurrent mutations sharing a force
+        static final SyncPolicy COMMIT = new SyncPolicy(0, 0);
+
+        // Milliseconds between forces, or zero
+        private final long interval;
+
+        // Records appended between forces, or zero
+        private final int records;
+
+        private SyncPolicy(final long interval, final int records)
+        {
+            this.interval = interval;
+            this.records  = records;
+        }
+
+        /**
+         * Parse a policy, "commit", a number of milliseconds followed by "ms"
+         * or a number of records followed by "records"
+         *
+         * @param policy - Description of the policy
+         *
+         * @return SyncPolicy - The policy described
+         *
+         * @throws IllegalArgumentException - If the description is not understood
+         */
+        static SyncPolicy parse(final String policy)
+        {
+            final String value = policy.trim().toLowerCase();
+
+            try
+            {
+                if (value.equals("commit"))
+                    return COMMIT;
+
+                if (value.endsWith("records"))
+                    return new SyncPolicy(0, positive(value.substring(0,
+                                                          value.length() - 7)));
+
+                if (value.endsWith("ms"))
+                    return new SyncPolicy(positive(value.substring(0,
+                                                       value.length() - 2)), 0);
+            }
+            catch (NumberFormatException nfe)
+            {
+                // Reported below along with any other malformed policy
+            }
+
+            throw new IllegalArgumentException("Unknown sync policy: " + policy);
+        }
+
+        private static int positive(final String number)
+        {
+            final int value = Integer.parseInt(number.trim());
+
+            if (value <= 0)
+                throw new NumberFormatException(number);
+
+            return value;
+        }
+    }
+
+}
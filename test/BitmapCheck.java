@@ -0,0 +1,149 @@
+/*
+ * Copyright 2014-2015 Rico Antonio Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * @author Rico Antonio Felix <ricoantoniofelix@yahoo.com>
+ */
+
+package com.rico.felix.data;
+
+/*
+ * Platform Dependencies
+ */
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * This class is used to check Bitmap against java.util.BitSet on random
+ * sets of ids.
+ *
+ * Each round fills two bitmaps and two bit sets alike through add and
+ * remove, over id ranges which are sparse, dense and spread across many
+ * chunks of 65536 ids, so that every kind of container and every pairing
+ * of containers is met. The bitmaps, their copies and the results of and,
+ * or and andNot must then hold exactly the ids of the matching bit sets.
+ *
+ * This check lives outside the application sources, so run.sh never ships
+ * it. From this directory run:
+ *     javac -d . ../src/*.java BitmapCheck.java
+ *     java com.rico.felix.data.BitmapCheck [rounds [seed]]
+ */
+public final class BitmapCheck
+{
+    /*
+     * Prevent instantiation
+     */
+    private BitmapCheck()
+    {}
+
+    // Largest id plus one of the rounds, taken in turn
+    private static final int[] RANGES = { 100, 70000, 300000, 5000000 };
+
+    // Fractions of a round's range set, chosen at random
+    private static final double[] DENSITIES = { 0.001, 0.05, 0.5, 0.9 };
+
+    // Number of random ids probed through contains per round
+    private static final int PROBES = 1000;
+
+    /**
+     * Run the check, failing with an IllegalStateException on the first
+     * difference found
+     *
+     * @param args - Optional number of rounds and random seed
+     *
+     * @return void
+     */
+    public static void main(final String[] args)
+    {
+        final int rounds = (args.length > 0) ? Integer.parseInt(args[0]) : 100;
+        final long seed  = (args.length > 1) ? Long.parseLong(args[1]) : System.nanoTime();
+        final Random random = new Random(seed);
+
+        for (int round = 0; round < rounds; ++round)
+        {
+            final int range = RANGES[round % RANGES.length];
+            final Bitmap[] bitmaps = new Bitmap[2];
+            final BitSet[] sets    = new BitSet[2];
+
+            for (int k = 0; k < bitmaps.length; ++k)
+            {
+                final int count = (int) (range * DENSITIES[random.nextInt(DENSITIES.length)]);
+
+                bitmaps[k] = new Bitmap();
+                sets[k]    = new BitSet();
+
+                for (int i = 0; i < count; ++i)
+                {
+                    final int id = random.nextInt(range);
+
+                    bitmaps[k].add(id);
+                    sets[k].set(id);
+                }
+
+                for (int i = 0; i < count / 3; ++i)
+                {
+                    final int id = random.nextInt(range);
+
+                    bitmaps[k].remove(id);
+                    sets[k].clear(id);
+                }
+
+                check("bitmap", bitmaps[k], sets[k], seed);
+                check("copy", bitmaps[k].copy(), sets[k], seed);
+            }
+
+            BitSet expected = (BitSet) sets[0].clone();
+            expected.and(sets[1]);
+            check("and", bitmaps[0].and(bitmaps[1]), expected, seed);
+
+            expected = (BitSet) sets[0].clone();
+            expected.or(sets[1]);
+            check("or", bitmaps[0].or(bitmaps[1]), expected, seed);
+
+            expected = (BitSet) sets[0].clone();
+            expected.andNot(sets[1]);
+            check("andNot", bitmaps[0].andNot(bitmaps[1]), expected, seed);
+
+            expected = (BitSet) sets[1].clone();
+            expected.andNot(sets[0]);
+            check("andNot", bitmaps[1].andNot(bitmaps[0]), expected, seed);
+
+            for (int i = 0; i < PROBES; ++i)
+            {
+                final int id = random.nextInt(range);
+
+                if (bitmaps[0].contains(id) != sets[0].get(id))
+                    throw new IllegalStateException("contains(" + id + ") differs, seed " + seed);
+            }
+        }
+
+        System.out.println(rounds + " rounds passed, seed " + seed);
+    }
+
+    /**
+     * Compare a bitmap with the bit set holding the ids it should hold
+     */
+    private static void check(final String operation, final Bitmap actual,
+            final BitSet expected, final long seed)
+    {
+        if (actual.cardinality() != expected.cardinality()
+                || actual.isEmpty() != expected.isEmpty()
+                || !Arrays.equals(actual.toArray(), expected.stream().toArray()))
+            throw new IllegalStateException(operation + " differs from BitSet, seed " + seed);
+    }
+
+}